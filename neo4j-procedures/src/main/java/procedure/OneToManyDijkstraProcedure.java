@@ -0,0 +1,115 @@
+package procedure;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * One to many Dijkstra running inside Neo4j, so only the distances leave the database.
+ *
+ * Usage: CALL tcc2.oneToManyDijkstra({sourceId}, {targetIds}) YIELD distances
+ */
+public class OneToManyDijkstraProcedure {
+  private static final Label NODE_LABEL = Label.label("Node");
+  private static final RelationshipType EDGE_TYPE = RelationshipType.withName("EDGE");
+  private static final String ID_PROPERTY = "id";
+  private static final String COST_PROPERTY = "cost";
+
+  @Context
+  public GraphDatabaseService db;
+
+  /**
+   * Returns a single row with the distance from the source to each target, in the order of the targets.
+   * Distance is -1 for targets that cannot be reached.
+   */
+  @Procedure("tcc2.oneToManyDijkstra")
+  public Stream<Distances> oneToManyDijkstra(
+      @Name("sourceId") long sourceId, @Name("targetIds") List<Long> targetIds) {
+    List<Double> distances = new ArrayList<>(targetIds.size());
+    for (int i = 0; i < targetIds.size(); i++) {
+      distances.add(-1.0);
+    }
+    Node source = db.findNode(NODE_LABEL, ID_PROPERTY, sourceId);
+    if (source == null) {
+      return Stream.of(new Distances(distances));
+    }
+
+    // Searches on internal node ids, which are only translated to id properties for settled nodes.
+    Map<Long, Double> distanceMap = new HashMap<>();
+    Set<Long> settled = new HashSet<>();
+    PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+    distanceMap.put(source.getId(), 0.0);
+    queue.add(new QueueEntry(source, 0.0));
+    int remainingTargets = new HashSet<>(targetIds).size();
+    while (!queue.isEmpty() && remainingTargets != 0) {
+      QueueEntry entry = queue.poll();
+      // Entries left behind by a decreased distance are skipped.
+      if (!settled.add(entry.node.getId())) {
+        continue;
+      }
+      long nodeId = (long) entry.node.getProperty(ID_PROPERTY);
+      for (int i = 0; i < targetIds.size(); i++) {
+        if (targetIds.get(i) == nodeId) {
+          if (distances.get(i) < 0) {
+            remainingTargets--;
+          }
+          distances.set(i, entry.distance);
+        }
+      }
+      for (Relationship relationship : entry.node.getRelationships(Direction.OUTGOING, EDGE_TYPE)) {
+        Node endNode = relationship.getEndNode();
+        if (settled.contains(endNode.getId())) {
+          continue;
+        }
+        double newDistance = entry.distance + (double) relationship.getProperty(COST_PROPERTY);
+        Double distance = distanceMap.get(endNode.getId());
+        if (distance == null || newDistance < distance) {
+          distanceMap.put(endNode.getId(), newDistance);
+          queue.add(new QueueEntry(endNode, newDistance));
+        }
+      }
+    }
+    return Stream.of(new Distances(distances));
+  }
+
+  /**
+   * Row returned by the procedure.
+   */
+  public static class Distances {
+    public List<Double> distances;
+
+    public Distances(List<Double> distances) {
+      this.distances = distances;
+    }
+  }
+
+  private static class QueueEntry implements Comparable<QueueEntry> {
+    private final Node node;
+    private final double distance;
+
+    QueueEntry(Node node, double distance) {
+      this.node = node;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(QueueEntry other) {
+      return Double.compare(distance, other.distance);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package procedure;
+
+import algorithm.dijkstra.PrimitiveOneToManyDijkstra;
+import model.graph.CompressedGraph;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the procedure on a small random graph in an embedded database and compares its distances with the ones of
+ * PrimitiveOneToManyDijkstra on the same graph held in a CompressedGraph.
+ */
+public class OneToManyDijkstraProcedureTest {
+  private static final Label NODE_LABEL = Label.label("Node");
+  private static final RelationshipType EDGE_TYPE = RelationshipType.withName("EDGE");
+  // Connected nodes are 0 to NODE_COUNT - 1, node NODE_COUNT has no relationships.
+  private static final int NODE_COUNT = 200;
+  private static final int EXTRA_RELATIONSHIPS_PER_NODE = 3;
+  private static final double DELTA = 1e-9;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private GraphDatabaseService db;
+  private CompressedGraph graph;
+
+  @Before
+  public void setUp() throws Exception {
+    db = new GraphDatabaseFactory().newEmbeddedDatabase(folder.newFolder("graph.db"));
+    ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+        .register(OneToManyDijkstraProcedure.class);
+    graph = createGraph(new Random(42));
+  }
+
+  @After
+  public void tearDown() {
+    db.shutdown();
+  }
+
+  @Test
+  public void distancesMatchPrimitiveOneToManyDijkstra() throws Exception {
+    Random random = new Random(7);
+    for (int search = 0; search < 5; search++) {
+      int sourceId = random.nextInt(NODE_COUNT);
+      // Targets include the source and a repeated id.
+      List<Integer> targetIds = new ArrayList<>(Arrays.asList(sourceId));
+      for (int i = 0; i < 20; i++) {
+        targetIds.add(random.nextInt(NODE_COUNT));
+      }
+      targetIds.add(targetIds.get(1));
+
+      double[] expected = PrimitiveOneToManyDijkstra.findShortestPaths(graph, sourceId, targetIds);
+      List<Double> distances = callProcedure(sourceId, targetIds);
+      assertEquals(targetIds.size(), distances.size());
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(String.format("Distance from %s to %s", sourceId, targetIds.get(i)),
+            expected[i], distances.get(i), DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void unreachableTargetIsMinusOne() {
+    List<Double> distances = callProcedure(0, Arrays.asList(NODE_COUNT, 0));
+    assertEquals(-1.0, distances.get(0), DELTA);
+    assertEquals(0.0, distances.get(1), DELTA);
+  }
+
+  @Test
+  public void missingSourceGivesMinusOneForEveryTarget() {
+    List<Double> distances = callProcedure(NODE_COUNT + 1, Arrays.asList(0, 1));
+    assertEquals(Arrays.asList(-1.0, -1.0), distances);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Double> callProcedure(int sourceId, List<Integer> targetIds) {
+    List<Long> ids = new ArrayList<>(targetIds.size());
+    for (int targetId : targetIds) {
+      ids.add((long) targetId);
+    }
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("sourceId", (long) sourceId);
+    parameters.put("targetIds", ids);
+    try (Transaction tx = db.beginTx()) {
+      Result result = db.execute(
+          "CALL tcc2.oneToManyDijkstra({sourceId}, {targetIds}) YIELD distances RETURN distances", parameters);
+      List<Double> distances = (List<Double>) result.next().get("distances");
+      tx.success();
+      return distances;
+    }
+  }
+
+  /**
+   * Stores a ring through every connected node plus random relationships in the database, so every node reaches
+   * every other, and returns the same relationships as a CompressedGraph.
+   */
+  private CompressedGraph createGraph(Random random) {
+    CompressedGraph.Builder builder =
+        new CompressedGraph.Builder(NODE_COUNT, NODE_COUNT * (EXTRA_RELATIONSHIPS_PER_NODE + 1));
+    try (Transaction tx = db.beginTx()) {
+      Node[] nodes = new Node[NODE_COUNT + 1];
+      for (int nodeId = 0; nodeId <= NODE_COUNT; nodeId++) {
+        nodes[nodeId] = db.createNode(NODE_LABEL);
+        nodes[nodeId].setProperty("id", (long) nodeId);
+      }
+      for (int nodeId = 0; nodeId < NODE_COUNT; nodeId++) {
+        addRelationship(builder, nodes, nodeId, (nodeId + 1) % NODE_COUNT, 1 + 9 * random.nextDouble());
+        for (int i = 0; i < EXTRA_RELATIONSHIPS_PER_NODE; i++) {
+          int targetId = random.nextInt(NODE_COUNT);
+          if (targetId != nodeId) {
+            addRelationship(builder, nodes, nodeId, targetId, 1 + 9 * random.nextDouble());
+          }
+        }
+      }
+      tx.success();
+    }
+    return builder.build();
+  }
+
+  private static void addRelationship(
+      CompressedGraph.Builder builder, Node[] nodes, int sourceId, int targetId, double cost) {
+    nodes[sourceId].createRelationshipTo(nodes[targetId], EDGE_TYPE).setProperty("cost", cost);
+    builder.addRelationship(sourceId, targetId, cost);
+  }
+}
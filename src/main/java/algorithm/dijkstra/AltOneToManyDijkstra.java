@@ -0,0 +1,173 @@
+package algorithm.dijkstra;
+
+import instrumentation.ObjectSizeFetcher;
+import model.dijkstra.DijkstraState;
+import model.graph.Graph;
+import model.graph.RelationshipConsumer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One to many A* search with landmark lower bounds (ALT), settling nodes by distance from the source plus a lower
+ * bound of the distance left to the closest target, instead of by distance alone.
+ *
+ * The potential of a node is the smallest landmark bound to any target. Bounds never exceed the distance left, so
+ * a target is settled with its shortest distance, like in PrimitiveOneToManyDijkstra, while nodes leading away from
+ * every target wait in the queue. Landmark distances are rounded to floats, so potentials may be slightly
+ * inconsistent and a node already expanded is queued again when a shorter distance reaches it. Nodes the landmarks
+ * prove cannot reach any target are never queued.
+ *
+ * Bounds cost one pass over the landmarks per target, so the search pays off for a few targets on large graphs.
+ * State and queue are reused by following searches, so an instance must only be used by one thread.
+ */
+public class AltOneToManyDijkstra {
+  private final Landmarks landmarks;
+  private final DijkstraState state;
+  private final IndexedHeap queue = new IndexedHeap();
+  private final Relaxation relaxation = new Relaxation();
+  // Potential of each visited node, by state index.
+  private double[] potentials = new double[1 << 10];
+  // Targets used for potentials, the source is left out as its bound is 0 around the start.
+  private int[] boundTargets = new int[0];
+  private int boundTargetCount;
+
+  public AltOneToManyDijkstra(Landmarks landmarks, int nodeCount) {
+    this.landmarks = landmarks;
+    this.state = new DijkstraState(nodeCount);
+  }
+
+  public double[] findShortestPaths(Graph graph, int sourceId, List<Integer> targetIds)
+      throws DijkstraOutOfMemoryError {
+    state.reset();
+    queue.clear();
+
+    // Number of targets remaining to have distance found.
+    int remainingTargetsIds = targetIds.size();
+    int[] targets = new int[targetIds.size()];
+    boundTargets = new int[targets.length];
+    boundTargetCount = 0;
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = targetIds.get(i);
+      if (targets[i] != sourceId) {
+        boundTargets[boundTargetCount++] = targets[i];
+      }
+    }
+
+    try {
+      // Origin is visited and becomes gray.
+      int startIndex = state.indexOf(sourceId);
+      state.setGray(startIndex);
+      state.setDistance(startIndex, 0.0);
+      setPotential(startIndex, 0.0);
+      queue.enqueue(startIndex, 0.0);
+
+      while (!queue.isEmpty() && remainingTargetsIds != 0) {
+        int index = queue.extractMin();
+        int nodeId = state.getNodeId(index);
+        relaxation.fromDistance = state.getDistance(index);
+        graph.forEachRelationship(nodeId, relaxation);
+        relaxation.prefetchDiscovered(graph);
+        // After going through all relationships, mark node as black.
+        state.setBlack(index);
+        for (int target : targets) {
+          if (target == nodeId) {
+            System.out.println(String.format("ALT remaining targets: %s", --remainingTargetsIds));
+            break;
+          }
+        }
+      }
+
+      double[] shortestPaths = new double[targets.length];
+      for (int i = 0; i < targets.length; i++) {
+        int index = state.findIndex(targets[i]);
+        if (index >= 0 && state.isBlack(index)) {
+          shortestPaths[i] = state.getDistance(index);
+        } else {
+          throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+        }
+      }
+      printMemoryUsage(graph);
+      return shortestPaths;
+    } catch (OutOfMemoryError e) {
+      printMemoryUsage(graph);
+      throw new DijkstraOutOfMemoryError(
+          ObjectSizeFetcher.getObjectFootprint(queue), ObjectSizeFetcher.getObjectFootprint(state));
+    }
+  }
+
+  private void printMemoryUsage(Graph graph) {
+    System.out.println("Graph cache size: " + graph.getCacheSize());
+    System.out.println("Queue size: " + queue.size());
+    System.out.println("Visited nodes: " + state.getVisitedCount());
+  }
+
+  /* Smallest lower bound from the node to a target, infinite if no target can be reached. */
+  private double findPotential(int nodeId) {
+    double potential = boundTargetCount == 0 ? 0.0 : Double.POSITIVE_INFINITY;
+    for (int i = 0; i < boundTargetCount && potential > 0.0; i++) {
+      potential = Math.min(potential, landmarks.getLowerBound(nodeId, boundTargets[i]));
+    }
+    return potential;
+  }
+
+  private void setPotential(int index, double potential) {
+    if (index >= potentials.length) {
+      potentials = Arrays.copyOf(potentials, Math.max(index + 1, potentials.length + (potentials.length >> 1)));
+    }
+    potentials[index] = potential;
+  }
+
+  /**
+   * Relaxes relationships leaving the node being expanded, queueing nodes by distance plus potential.
+   */
+  private class Relaxation implements RelationshipConsumer {
+    private double fromDistance;
+    // Nodes that became gray while relaxing the current node.
+    private int[] discovered = new int[16];
+    private int discoveredCount;
+
+    /* Lets the graph load relationships of discovered nodes together, before they are expanded one by one. */
+    void prefetchDiscovered(Graph graph) {
+      if (discoveredCount > 0) {
+        graph.prefetch(discovered, discoveredCount);
+        discoveredCount = 0;
+      }
+    }
+
+    @Override
+    public void accept(int endNodeId, double cost) {
+      int index = state.indexOf(endNodeId);
+      double newDistance = fromDistance + cost;
+      if (state.isWhite(index)) {
+        double potential = findPotential(endNodeId);
+        if (Double.isInfinite(potential)) {
+          // No target behind this node, it is closed without being expanded.
+          state.setGray(index);
+          state.setBlack(index);
+          setPotential(index, potential);
+          return;
+        }
+        // White becomes gray when visited.
+        state.setGray(index);
+        state.setDistance(index, newDistance);
+        setPotential(index, potential);
+        queue.enqueue(index, newDistance + potential);
+        if (discoveredCount == discovered.length) {
+          discovered = Arrays.copyOf(discovered, discoveredCount * 2);
+        }
+        discovered[discoveredCount++] = endNodeId;
+      } else if (state.isGray(index) && newDistance < state.getDistance(index)) {
+        // If was already visited, decrease its priority in queue.
+        state.setDistance(index, newDistance);
+        queue.decreasePriority(index, newDistance + potentials[index]);
+      } else if (state.isBlack(index) && !Double.isInfinite(potentials[index])
+          && newDistance < state.getDistance(index)) {
+        // Expanded with a longer distance, expanded again so the shorter one reaches the targets.
+        state.setGray(index);
+        state.setDistance(index, newDistance);
+        queue.enqueue(index, newDistance + potentials[index]);
+      }
+    }
+  }
+}
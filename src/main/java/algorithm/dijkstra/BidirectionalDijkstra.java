@@ -0,0 +1,127 @@
+package algorithm.dijkstra;
+
+import instrumentation.ObjectSizeFetcher;
+import model.dijkstra.DijkstraState;
+import model.graph.Graph;
+import model.graph.RelationshipConsumer;
+
+import java.util.List;
+
+/**
+ * Point to point Dijkstra searching forward from the source and backward from the target at the same time.
+ * Each side only settles nodes up to about half of the distance, so on road networks both balls together are much
+ * smaller than the ball a one way search settles before reaching the target.
+ *
+ * The backward side runs on the reverse graph, as built by CompressedGraph.transpose. The search stops once the
+ * smallest distances queued on both sides add up to the shortest path found where the sides met.
+ *
+ * State and queue of both sides are reused by following searches, so an instance must only be used by one thread.
+ */
+public class BidirectionalDijkstra {
+  private final Graph graph;
+  private final Graph reverseGraph;
+  private final Side forward;
+  private final Side backward;
+  // Shortest path through a node reached by both sides so far.
+  private double bestDistance;
+
+  public BidirectionalDijkstra(Graph graph, Graph reverseGraph) {
+    this.graph = graph;
+    this.reverseGraph = reverseGraph;
+    this.forward = new Side(new DijkstraState(graph.getNodeCount()));
+    this.backward = new Side(new DijkstraState(reverseGraph.getNodeCount()));
+    forward.other = backward;
+    backward.other = forward;
+  }
+
+  /**
+   * Distances from the source to each target, one search per target.
+   */
+  public double[] findShortestPaths(int sourceId, List<Integer> targetIds) throws DijkstraOutOfMemoryError {
+    double[] shortestPaths = new double[targetIds.size()];
+    for (int i = 0; i < shortestPaths.length; i++) {
+      shortestPaths[i] = findShortestPath(sourceId, targetIds.get(i));
+    }
+    return shortestPaths;
+  }
+
+  public double findShortestPath(int sourceId, int targetId) throws DijkstraOutOfMemoryError {
+    if (sourceId == targetId) {
+      return 0.0;
+    }
+    try {
+      forward.start(sourceId);
+      backward.start(targetId);
+      bestDistance = Double.POSITIVE_INFINITY;
+      // Once a side runs out of nodes every path it could take was already met by the other side.
+      while (!forward.queue.isEmpty() && !backward.queue.isEmpty()
+          && forward.queue.peekPriority() + backward.queue.peekPriority() < bestDistance) {
+        // The side with the smaller queue is expanded, which keeps both balls of similar size.
+        if (forward.queue.size() <= backward.queue.size()) {
+          forward.expand(graph);
+        } else {
+          backward.expand(reverseGraph);
+        }
+      }
+      System.out.println(String.format("Bidirectional Dijkstra visited nodes: %s",
+          forward.state.getVisitedCount() + backward.state.getVisitedCount()));
+      if (Double.isInfinite(bestDistance)) {
+        throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+      }
+      return bestDistance;
+    } catch (OutOfMemoryError e) {
+      throw new DijkstraOutOfMemoryError(
+          ObjectSizeFetcher.getObjectFootprint(forward.queue) + ObjectSizeFetcher.getObjectFootprint(backward.queue),
+          ObjectSizeFetcher.getObjectFootprint(forward.state) + ObjectSizeFetcher.getObjectFootprint(backward.state));
+    }
+  }
+
+  /**
+   * State and queue of one direction, relaxing relationships of the node it expands.
+   */
+  private class Side implements RelationshipConsumer {
+    private final DijkstraState state;
+    private final IndexedHeap queue = new IndexedHeap();
+    private Side other;
+    private double fromDistance;
+
+    Side(DijkstraState state) {
+      this.state = state;
+    }
+
+    void start(int nodeId) {
+      state.reset();
+      queue.clear();
+      int index = state.indexOf(nodeId);
+      state.setGray(index);
+      state.setDistance(index, 0.0);
+      queue.enqueue(index, 0.0);
+    }
+
+    void expand(Graph sideGraph) {
+      int index = queue.extractMin();
+      fromDistance = state.getDistance(index);
+      sideGraph.forEachRelationship(state.getNodeId(index), this);
+      state.setBlack(index);
+    }
+
+    @Override
+    public void accept(int endNodeId, double cost) {
+      int index = state.indexOf(endNodeId);
+      double newDistance = fromDistance + cost;
+      if (state.isWhite(index)) {
+        state.setGray(index);
+        state.setDistance(index, newDistance);
+        queue.enqueue(index, newDistance);
+      } else if (state.isGray(index) && newDistance < state.getDistance(index)) {
+        state.setDistance(index, newDistance);
+        queue.decreasePriority(index, newDistance);
+      }
+      // Paths through a node the other side reached are candidates for the shortest path.
+      int otherIndex = other.state.findIndex(endNodeId);
+      if (otherIndex >= 0 && newDistance + other.state.getDistance(otherIndex) < bestDistance) {
+        bestDistance = newDistance + other.state.getDistance(otherIndex);
+      }
+    }
+  }
+}
@@ -0,0 +1,675 @@
+package algorithm.dijkstra;
+
+import com.koloboke.collect.map.hash.HashIntIntMap;
+import com.koloboke.collect.map.hash.HashIntIntMaps;
+import common.Timer;
+import model.graph.CompressedGraph;
+import model.graph.Graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction hierarchy of a graph: nodes are contracted one after the other, and each contraction adds a shortcut
+ * between two neighbours when the path through the contracted node is the only shortest one. A node then only needs
+ * its relationships to nodes contracted after it (higher ranked), as every shortest path goes up to its highest node
+ * and then down, using shortcuts. Queries are run by ContractionHierarchyQuery.
+ *
+ * Nodes are ordered by edge difference: shortcuts added minus relationships removed, plus the number of neighbours
+ * already contracted to spread contractions over the graph. Each round contracts in parallel the nodes whose
+ * priority is lower than the one of every neighbour. Such nodes are never neighbours, and their witness searches
+ * avoid each other, so shortcuts found for them in parallel are still valid once all of them are contracted.
+ *
+ * Only distances are kept, shortcuts do not record the node they skip, so paths cannot be unpacked.
+ *
+ * File layout (big endian):
+ * int magic, int version, int nodeCount, then for the upward and the backward graph:
+ * int relationshipCount, int[nodeCount + 1] offsets, int[relationshipCount] targets, double[relationshipCount] costs.
+ */
+public class ContractionHierarchy {
+  static final String HIERARCHY_FILE_TEMPLATE = "graph.%s.ch";
+  static final int MAGIC = 0x54534348;
+  static final int VERSION = 1;
+  // Threads contracting nodes, set with -Dch.threads.
+  public static final int THREADS = Integer.getInteger("ch.threads", Runtime.getRuntime().availableProcessors());
+  // Nodes a witness search settles before giving up and adding the shortcut, set with -Dch.witness.settled.
+  static final int WITNESS_SETTLED = Integer.getInteger("ch.witness.settled", 500);
+  // Weight of the edge difference against contracted neighbours in node priorities.
+  private static final int EDGE_DIFFERENCE_WEIGHT = 4;
+  // Room left at each node for shortcuts, before its relationships move to a larger room.
+  private static final int SHORTCUT_ROOM = 2;
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+  // Bytes per node of a dense witness search: distance and target mark.
+  private static final int DENSE_WITNESS_BYTES = Double.BYTES + Integer.BYTES;
+  // If GraphFileExportRunner also builds the hierarchy, set with -Dch.export=true. Takes long on the largest graphs.
+  public static final boolean EXPORT = Boolean.getBoolean("ch.export");
+
+  private final int nodeCount;
+  // Relationships to higher ranked nodes, searched forward from a source.
+  private final CompressedGraph upward;
+  // Relationships from higher ranked nodes, stored at their end node and searched backward from a target.
+  private final CompressedGraph backward;
+
+  private ContractionHierarchy(int nodeCount, CompressedGraph upward, CompressedGraph backward) {
+    this.nodeCount = nodeCount;
+    this.upward = upward;
+    this.backward = backward;
+  }
+
+  public static File getHierarchyFile(Graph.Country graphCountry) {
+    return new File(String.format(HIERARCHY_FILE_TEMPLATE, graphCountry.toString().toLowerCase()));
+  }
+
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  public CompressedGraph getUpwardGraph() {
+    return upward;
+  }
+
+  public CompressedGraph getBackwardGraph() {
+    return backward;
+  }
+
+  /**
+   * Contracts nodes 0 to nodeCount - 1 of the graph with the given number of threads.
+   */
+  public static ContractionHierarchy build(Graph graph, int nodeCount, int threads) {
+    Timer buildTimer = new Timer();
+    buildTimer.startCounter();
+    Contraction contraction = new Contraction(graph, nodeCount);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      // Dense witness states are faster to search, they are used when the ones of every thread fit in a quarter of
+      // the heap.
+      boolean denseWitness =
+          (long) threads * nodeCount * DENSE_WITNESS_BYTES <= Runtime.getRuntime().maxMemory() / 4;
+      ThreadLocal<WitnessSearch> witnessSearches =
+          ThreadLocal.withInitial(() -> new WitnessSearch(denseWitness ? nodeCount : -1));
+      int[] priorities = new int[nodeCount];
+      run(pool, () -> IntStream.range(0, nodeCount).parallel().forEach(nodeId ->
+          priorities[nodeId] = contraction.getPriority(nodeId, witnessSearches.get())));
+      // Nodes not contracted yet, rounds only look at them instead of every node.
+      int[] remaining = IntStream.range(0, nodeCount).toArray();
+      int rounds = 0;
+      long shortcutCount = 0;
+      while (remaining.length > 0) {
+        // Nodes with a lower priority than every neighbour, ties broken by id.
+        int[] candidates = remaining;
+        int[] batch = run(pool, () -> IntStream.of(candidates).parallel()
+            .filter(nodeId -> contraction.isLocalMinimum(nodeId, priorities))
+            .toArray());
+        for (int nodeId : batch) {
+          contraction.inBatch[nodeId] = true;
+        }
+        Shortcuts[] shortcuts = new Shortcuts[batch.length];
+        run(pool, () -> IntStream.range(0, batch.length).parallel().forEach(i -> {
+          shortcuts[i] = new Shortcuts();
+          contraction.findShortcuts(batch[i], witnessSearches.get(), shortcuts[i]);
+        }));
+        for (int i = 0; i < batch.length; i++) {
+          contraction.contract(batch[i], shortcuts[i]);
+          shortcutCount += shortcuts[i].count;
+        }
+        rounds++;
+        remaining = IntStream.of(candidates).filter(nodeId -> !contraction.contracted[nodeId]).toArray();
+        int[] changed = contraction.takeChanged();
+        run(pool, () -> IntStream.of(changed).parallel()
+            .forEach(nodeId -> priorities[nodeId] = contraction.getPriority(nodeId, witnessSearches.get())));
+      }
+      ContractionHierarchy hierarchy = contraction.toHierarchy();
+      System.out.println(String.format(
+          "Contracted %s nodes in %s rounds, added %s shortcuts in: %ss",
+          nodeCount, rounds, shortcutCount, buildTimer.endCounter()));
+      return hierarchy;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  public void export(File hierarchyFile) {
+    try (DataOutputStream output =
+             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(hierarchyFile), 1 << 16))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(nodeCount);
+      writeGraph(output, upward);
+      writeGraph(output, backward);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error writing hierarchy file: %s", hierarchyFile), e);
+    }
+  }
+
+  public static ContractionHierarchy read(File hierarchyFile) {
+    Timer readTimer = new Timer();
+    readTimer.startCounter();
+    try (DataInputStream input =
+             new DataInputStream(new BufferedInputStream(new FileInputStream(hierarchyFile), 1 << 16))) {
+      if (input.readInt() != MAGIC) {
+        throw new IllegalArgumentException(String.format("Not a hierarchy file: %s", hierarchyFile));
+      }
+      int version = input.readInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException(String.format(
+            "Unsupported hierarchy file version %s in %s, expected %s.", version, hierarchyFile, VERSION));
+      }
+      int nodeCount = input.readInt();
+      CompressedGraph upward = readGraph(input, nodeCount);
+      CompressedGraph backward = readGraph(input, nodeCount);
+      System.out.println(String.format("Read hierarchy of %s nodes in: %ss", nodeCount, readTimer.endCounter()));
+      return new ContractionHierarchy(nodeCount, upward, backward);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error reading hierarchy file: %s", hierarchyFile), e);
+    }
+  }
+
+  private static void writeGraph(DataOutputStream output, CompressedGraph graph) throws IOException {
+    output.writeInt(graph.getRelationshipCount());
+    int[] offset = {0};
+    output.writeInt(0);
+    for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+      graph.forEachRelationship(nodeId, (endNodeId, cost) -> offset[0]++);
+      output.writeInt(offset[0]);
+    }
+    IOException[] error = {null};
+    for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+      graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+        try {
+          output.writeInt(endNodeId);
+        } catch (IOException e) {
+          error[0] = e;
+        }
+      });
+    }
+    for (int nodeId = 0; nodeId < graph.getNodeCount(); nodeId++) {
+      graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+        try {
+          output.writeDouble(cost);
+        } catch (IOException e) {
+          error[0] = e;
+        }
+      });
+    }
+    if (error[0] != null) {
+      throw error[0];
+    }
+  }
+
+  private static CompressedGraph readGraph(DataInputStream input, int nodeCount) throws IOException {
+    int relationshipCount = input.readInt();
+    int[] offsets = new int[nodeCount + 1];
+    for (int i = 0; i <= nodeCount; i++) {
+      offsets[i] = input.readInt();
+    }
+    int[] targets = new int[relationshipCount];
+    for (int i = 0; i < relationshipCount; i++) {
+      targets[i] = input.readInt();
+    }
+    CompressedGraph.Builder builder = new CompressedGraph.Builder(nodeCount, relationshipCount);
+    for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+      for (int i = offsets[nodeId]; i < offsets[nodeId + 1]; i++) {
+        builder.addRelationship(nodeId, targets[i], input.readDouble());
+      }
+    }
+    return builder.build(nodeCount);
+  }
+
+  /**
+   * Runs a parallel stream in the pool instead of the common pool, rethrowing the exception of a worker. Also used by
+   * ContractionHierarchyManyToMany.
+   */
+  static void run(ForkJoinPool pool, Runnable task) {
+    run(pool, () -> {
+      task.run();
+      return null;
+    });
+  }
+
+  static <T> T run(ForkJoinPool pool, Callable<T> task) {
+    try {
+      return pool.submit(task).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for parallel searches.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException("Error in parallel searches.", e.getCause());
+    }
+  }
+
+  /**
+   * Graph being contracted, with relationships leaving and arriving at each node. Contracted nodes keep their
+   * relationships to the nodes left, which are their relationships to higher ranked nodes.
+   */
+  private static class Contraction {
+    private final int nodeCount;
+    // Relationships leaving each node, to their target.
+    private final Adjacency out;
+    // Relationships arriving at each node, from their source.
+    private final Adjacency in;
+    private final int[] contractedNeighbours;
+    private final boolean[] contracted;
+    // Nodes contracted in the current round, avoided by witness searches.
+    private final boolean[] inBatch;
+    // Neighbours of nodes contracted in the current round, whose priority changed.
+    private final boolean[] changed;
+    private int[] changedIds = new int[64];
+    private int changedCount;
+
+    Contraction(Graph graph, int nodeCount) {
+      this.nodeCount = nodeCount;
+      // Degrees are counted first, so relationships are stored in arrays of the right size.
+      int[] outDegrees = new int[nodeCount];
+      int[] inDegrees = new int[nodeCount];
+      for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+        int sourceId = nodeId;
+        graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+          if (endNodeId < 0 || endNodeId >= nodeCount) {
+            throw new IllegalArgumentException(
+                String.format("Relationship to node %s outside of the %s nodes contracted.", endNodeId, nodeCount));
+          }
+          if (endNodeId != sourceId) {
+            outDegrees[sourceId]++;
+            inDegrees[endNodeId]++;
+          }
+        });
+      }
+      out = new Adjacency(outDegrees);
+      in = new Adjacency(inDegrees);
+      contractedNeighbours = new int[nodeCount];
+      contracted = new boolean[nodeCount];
+      inBatch = new boolean[nodeCount];
+      changed = new boolean[nodeCount];
+      for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+        int sourceId = nodeId;
+        graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+          if (endNodeId != sourceId) {
+            addRelationship(sourceId, endNodeId, cost);
+          }
+        });
+      }
+    }
+
+    /* Adds the relationship, or lowers the cost of an existing one between the same nodes. */
+    void addRelationship(int sourceId, int targetId, double cost) {
+      int position = out.find(sourceId, targetId);
+      if (position < 0) {
+        out.add(sourceId, targetId, cost);
+        in.add(targetId, sourceId, cost);
+      } else if (cost < out.costs[position]) {
+        out.costs[position] = cost;
+        in.costs[in.find(targetId, sourceId)] = cost;
+      }
+    }
+
+    /* Edge difference of contracting the node now, weighing more than its contracted neighbours. */
+    int getPriority(int nodeId, WitnessSearch witnessSearch) {
+      Shortcuts shortcuts = new Shortcuts();
+      findShortcuts(nodeId, witnessSearch, shortcuts);
+      int edgeDifference = shortcuts.count - out.counts[nodeId] - in.counts[nodeId];
+      return EDGE_DIFFERENCE_WEIGHT * edgeDifference + contractedNeighbours[nodeId];
+    }
+
+    boolean isLocalMinimum(int nodeId, int[] priorities) {
+      int outEnd = out.starts[nodeId] + out.counts[nodeId];
+      for (int i = out.starts[nodeId]; i < outEnd; i++) {
+        if (!isLower(nodeId, out.ids[i], priorities)) {
+          return false;
+        }
+      }
+      int inEnd = in.starts[nodeId] + in.counts[nodeId];
+      for (int i = in.starts[nodeId]; i < inEnd; i++) {
+        if (!isLower(nodeId, in.ids[i], priorities)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean isLower(int nodeId, int otherId, int[] priorities) {
+      return priorities[nodeId] < priorities[otherId]
+          || (priorities[nodeId] == priorities[otherId] && nodeId < otherId);
+    }
+
+    /**
+     * Shortcuts needed between neighbours of the node: one for each pair whose path through the node is shorter than
+     * any path a limited witness search finds around it.
+     */
+    void findShortcuts(int nodeId, WitnessSearch witnessSearch, Shortcuts shortcuts) {
+      int outStart = out.starts[nodeId];
+      int outEnd = outStart + out.counts[nodeId];
+      int inEnd = in.starts[nodeId] + in.counts[nodeId];
+      for (int i = in.starts[nodeId]; i < inEnd; i++) {
+        int sourceId = in.ids[i];
+        double inCost = in.costs[i];
+        double maxOutCost = 0.0;
+        int targetCount = 0;
+        for (int j = outStart; j < outEnd; j++) {
+          if (out.ids[j] != sourceId) {
+            maxOutCost = Math.max(maxOutCost, out.costs[j]);
+            targetCount++;
+          }
+        }
+        if (targetCount == 0) {
+          continue;
+        }
+        witnessSearch.markTargets(out.ids, outStart, outEnd, sourceId);
+        witnessSearch.run(this, sourceId, nodeId, inCost + maxOutCost, targetCount);
+        for (int j = outStart; j < outEnd; j++) {
+          int targetId = out.ids[j];
+          double viaCost = inCost + out.costs[j];
+          if (targetId != sourceId && witnessSearch.getDistance(targetId) > viaCost) {
+            shortcuts.add(sourceId, targetId, viaCost);
+          }
+        }
+        witnessSearch.reset();
+      }
+    }
+
+    /* Removes the node from the graph left, adding its shortcuts and marking neighbours whose priority changed. */
+    void contract(int nodeId, Shortcuts shortcuts) {
+      contracted[nodeId] = true;
+      inBatch[nodeId] = false;
+      int outEnd = out.starts[nodeId] + out.counts[nodeId];
+      for (int i = out.starts[nodeId]; i < outEnd; i++) {
+        int targetId = out.ids[i];
+        in.remove(targetId, nodeId);
+        contractedNeighbours[targetId]++;
+        markChanged(targetId);
+      }
+      int inEnd = in.starts[nodeId] + in.counts[nodeId];
+      for (int i = in.starts[nodeId]; i < inEnd; i++) {
+        int sourceId = in.ids[i];
+        out.remove(sourceId, nodeId);
+        contractedNeighbours[sourceId]++;
+        markChanged(sourceId);
+      }
+      for (int i = 0; i < shortcuts.count; i++) {
+        addRelationship(shortcuts.sources[i], shortcuts.targets[i], shortcuts.costs[i]);
+      }
+    }
+
+    /* Nodes marked since the last call, clearing their marks. */
+    int[] takeChanged() {
+      int[] nodeIds = Arrays.copyOf(changedIds, changedCount);
+      for (int nodeId : nodeIds) {
+        changed[nodeId] = false;
+      }
+      changedCount = 0;
+      return nodeIds;
+    }
+
+    private void markChanged(int nodeId) {
+      if (!changed[nodeId]) {
+        changed[nodeId] = true;
+        if (changedCount == changedIds.length) {
+          changedIds = Arrays.copyOf(changedIds, 2 * changedCount);
+        }
+        changedIds[changedCount++] = nodeId;
+      }
+    }
+
+    /* Relationships kept by contracted nodes form the upward graph, the ones arriving form the backward graph. */
+    ContractionHierarchy toHierarchy() {
+      CompressedGraph.Builder upwardBuilder = new CompressedGraph.Builder(nodeCount, out.size);
+      CompressedGraph.Builder backwardBuilder = new CompressedGraph.Builder(nodeCount, in.size);
+      for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+        int outEnd = out.starts[nodeId] + out.counts[nodeId];
+        for (int i = out.starts[nodeId]; i < outEnd; i++) {
+          upwardBuilder.addRelationship(nodeId, out.ids[i], out.costs[i]);
+        }
+        int inEnd = in.starts[nodeId] + in.counts[nodeId];
+        for (int i = in.starts[nodeId]; i < inEnd; i++) {
+          backwardBuilder.addRelationship(nodeId, in.ids[i], in.costs[i]);
+        }
+      }
+      return new ContractionHierarchy(
+          nodeCount, upwardBuilder.build(nodeCount), backwardBuilder.build(nodeCount));
+    }
+  }
+
+  /**
+   * Relationships of every node on one side, in flat arrays: the ones of a node start at starts[nodeId], with room
+   * for capacities[nodeId]. Each node gets its degree plus SHORTCUT_ROOM. A node outgrowing its room moves to the end
+   * of the arrays with twice the room, leaving the old one unused, as nodes only grow by shortcuts.
+   */
+  private static class Adjacency {
+    private final int[] starts;
+    private final int[] counts;
+    private final int[] capacities;
+    private int[] ids;
+    private double[] costs;
+    // Positions used by rooms, and relationships stored.
+    private int length;
+    private int size;
+
+    Adjacency(int[] degrees) {
+      starts = new int[degrees.length];
+      counts = new int[degrees.length];
+      capacities = new int[degrees.length];
+      long total = 0;
+      for (int nodeId = 0; nodeId < degrees.length; nodeId++) {
+        starts[nodeId] = (int) Math.min(total, Integer.MAX_VALUE);
+        capacities[nodeId] = degrees[nodeId] + SHORTCUT_ROOM;
+        total += capacities[nodeId];
+      }
+      if (total > MAX_ARRAY_LENGTH) {
+        throw new IllegalArgumentException(String.format("Too many relationships to contract: %s", total));
+      }
+      length = (int) total;
+      ids = new int[length];
+      costs = new double[length];
+    }
+
+    /* Position of the relationship of the node with the other one, -1 if there is none. */
+    int find(int nodeId, int otherId) {
+      int end = starts[nodeId] + counts[nodeId];
+      for (int i = starts[nodeId]; i < end; i++) {
+        if (ids[i] == otherId) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    void add(int nodeId, int otherId, double cost) {
+      if (counts[nodeId] == capacities[nodeId]) {
+        int capacity = Math.max(2 * capacities[nodeId], SHORTCUT_ROOM);
+        if (length + (long) capacity > ids.length) {
+          long arrayLength =
+              Math.min(MAX_ARRAY_LENGTH, Math.max(length + (long) capacity, ids.length + (ids.length >> 1)));
+          if (length + (long) capacity > arrayLength) {
+            throw new IllegalArgumentException(String.format("Too many shortcuts to contract: %s", size));
+          }
+          ids = Arrays.copyOf(ids, (int) arrayLength);
+          costs = Arrays.copyOf(costs, (int) arrayLength);
+        }
+        System.arraycopy(ids, starts[nodeId], ids, length, counts[nodeId]);
+        System.arraycopy(costs, starts[nodeId], costs, length, counts[nodeId]);
+        starts[nodeId] = length;
+        capacities[nodeId] = capacity;
+        length += capacity;
+      }
+      int position = starts[nodeId] + counts[nodeId]++;
+      ids[position] = otherId;
+      costs[position] = cost;
+      size++;
+    }
+
+    void remove(int nodeId, int otherId) {
+      int position = find(nodeId, otherId);
+      if (position >= 0) {
+        int last = starts[nodeId] + --counts[nodeId];
+        ids[position] = ids[last];
+        costs[position] = costs[last];
+        size--;
+      }
+    }
+  }
+
+  /* Shortcuts found for one node, as parallel arrays. */
+  private static class Shortcuts {
+    private int[] sources = new int[4];
+    private int[] targets = new int[4];
+    private double[] costs = new double[4];
+    private int count;
+
+    void add(int sourceId, int targetId, double cost) {
+      if (count == sources.length) {
+        sources = Arrays.copyOf(sources, 2 * count);
+        targets = Arrays.copyOf(targets, 2 * count);
+        costs = Arrays.copyOf(costs, 2 * count);
+      }
+      sources[count] = sourceId;
+      targets[count] = targetId;
+      costs[count++] = cost;
+    }
+  }
+
+  /**
+   * Dijkstra from a neighbour of the contracted node, avoiding it, contracted nodes and nodes of the current round.
+   * It stops past the longest path through the contracted node or after WITNESS_SETTLED nodes, a witness not
+   * found only costs a shortcut that was not needed. One instance per thread, arrays are reused.
+   *
+   * Arrays are indexed by node id when nodeCount is given. Otherwise node ids are remapped to slots, as searches only
+   * reach a few hundred nodes, at the cost of a hash lookup per relationship.
+   */
+  private static class WitnessSearch {
+    // Slot of each node reached since the last reset, null when slots are node ids.
+    private final HashIntIntMap slots;
+    private double[] distances;
+    // Targets of the current search are marked with its number, so marks never need clearing.
+    private int[] targetMarks;
+    private int searchMark;
+    private final IndexedHeap queue = new IndexedHeap();
+    private int[] touched = new int[64];
+    private int touchedCount;
+
+    WitnessSearch(int nodeCount) {
+      slots = nodeCount < 0 ? HashIntIntMaps.newMutableMap() : null;
+      distances = new double[Math.max(nodeCount, 64)];
+      Arrays.fill(distances, Double.POSITIVE_INFINITY);
+      targetMarks = new int[distances.length];
+    }
+
+    /* Marks the nodes between positions start and end of the array, except the source. */
+    void markTargets(int[] targetIds, int start, int end, int sourceId) {
+      searchMark++;
+      for (int i = start; i < end; i++) {
+        if (targetIds[i] != sourceId) {
+          targetMarks[slotOf(targetIds[i])] = searchMark;
+        }
+      }
+    }
+
+    /* Searches until every neighbour of the avoided node other than the source is settled, or a limit is hit. */
+    void run(Contraction contraction, int sourceId, int avoidedId, double maxCost, int targetCount) {
+      int sourceSlot = slotOf(sourceId);
+      setDistance(sourceSlot, 0.0);
+      queue.enqueue(sourceSlot, 0.0);
+      int settled = 0;
+      int targetsLeft = targetCount;
+      while (!queue.isEmpty() && settled < WITNESS_SETTLED && queue.peekPriority() <= maxCost && targetsLeft > 0) {
+        int slot = queue.extractMin();
+        settled++;
+        if (targetMarks[slot] == searchMark) {
+          targetsLeft--;
+        }
+        int nodeId = slots == null ? slot : touched[slot];
+        double fromDistance = distances[slot];
+        Adjacency out = contraction.out;
+        int[] endNodeIds = out.ids;
+        double[] costs = out.costs;
+        int end = out.starts[nodeId] + out.counts[nodeId];
+        for (int i = out.starts[nodeId]; i < end; i++) {
+          int endNodeId = endNodeIds[i];
+          if (endNodeId == avoidedId || contraction.contracted[endNodeId] || contraction.inBatch[endNodeId]) {
+            continue;
+          }
+          int endSlot = slotOf(endNodeId);
+          double distance = fromDistance + costs[i];
+          if (distance >= distances[endSlot]) {
+            continue;
+          }
+          if (queue.contains(endSlot)) {
+            queue.decreasePriority(endSlot, distance);
+          } else {
+            queue.enqueue(endSlot, distance);
+          }
+          setDistance(endSlot, distance);
+        }
+      }
+    }
+
+    double getDistance(int nodeId) {
+      if (slots == null) {
+        return distances[nodeId];
+      }
+      int slot = slots.getOrDefault(nodeId, -1);
+      return slot < 0 ? Double.POSITIVE_INFINITY : distances[slot];
+    }
+
+    void reset() {
+      if (slots == null) {
+        for (int i = 0; i < touchedCount; i++) {
+          distances[touched[i]] = Double.POSITIVE_INFINITY;
+        }
+      } else {
+        Arrays.fill(distances, 0, slots.size(), Double.POSITIVE_INFINITY);
+        slots.clear();
+      }
+      touchedCount = 0;
+      queue.clear();
+    }
+
+    /* Slot of the node, given in reaching order when remapping. Remapped slots are listed in touched by slot. */
+    private int slotOf(int nodeId) {
+      if (slots == null) {
+        return nodeId;
+      }
+      int slot = slots.getOrDefault(nodeId, -1);
+      if (slot < 0) {
+        slot = slots.size();
+        slots.put(nodeId, slot);
+        if (slot == distances.length) {
+          distances = Arrays.copyOf(distances, 2 * slot);
+          Arrays.fill(distances, slot, distances.length, Double.POSITIVE_INFINITY);
+          targetMarks = Arrays.copyOf(targetMarks, 2 * slot);
+        }
+        addTouched(nodeId);
+      }
+      return slot;
+    }
+
+    private void setDistance(int slot, double distance) {
+      if (slots == null && Double.isInfinite(distances[slot])) {
+        addTouched(slot);
+      }
+      distances[slot] = distance;
+    }
+
+    private void addTouched(int nodeId) {
+      if (touchedCount == touched.length) {
+        touched = Arrays.copyOf(touched, 2 * touchedCount);
+      }
+      touched[touchedCount++] = nodeId;
+    }
+  }
+}
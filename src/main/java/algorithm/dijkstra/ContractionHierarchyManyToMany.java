@@ -0,0 +1,166 @@
+package algorithm.dijkstra;
+
+import com.koloboke.collect.map.hash.HashIntIntMap;
+import com.koloboke.collect.map.hash.HashIntIntMaps;
+import common.Timer;
+import model.graph.CompressedGraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Distance table between many sources and targets on a ContractionHierarchy, with one upward search per node
+ * instead of one query per pair.
+ *
+ * A backward upward search from each target leaves a bucket entry (target, distance) at every node it settles. A
+ * forward upward search from each source then scans the buckets of the nodes it settles: a shortest path goes up
+ * from the source and down to the target, so it meets a bucket entry of its target at its highest node.
+ *
+ * Upward searches are exhaustive but small, as they only go up the hierarchy. Nodes stalled on demand are left
+ * out of both phases, their distance is not the shortest one and the path goes through a higher node anyway.
+ */
+public class ContractionHierarchyManyToMany {
+
+  /**
+   * Distances from each source to each target, infinite when a target cannot be reached. Searches of each phase
+   * run on parallelism threads.
+   */
+  public static double[][] buildTable(
+      ContractionHierarchy hierarchy, List<Integer> sourceIds, List<Integer> targetIds, int parallelism) {
+    Timer tableTimer = new Timer();
+    tableTimer.startCounter();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      // Backward searches, each target keeps the nodes it settled until buckets are built.
+      ThreadLocal<SettlingSearch> backwardSearches = ThreadLocal.withInitial(() -> new SettlingSearch(
+          hierarchy.getNodeCount(), hierarchy.getBackwardGraph(), hierarchy.getUpwardGraph()));
+      int[][] settledIds = new int[targetIds.size()][];
+      double[][] settledDistances = new double[targetIds.size()][];
+      ContractionHierarchy.run(pool, () -> IntStream.range(0, targetIds.size()).parallel().forEach(i -> {
+        SettlingSearch search = backwardSearches.get();
+        search.run(targetIds.get(i));
+        settledIds[i] = Arrays.copyOf(search.settledIds, search.settledCount);
+        settledDistances[i] = Arrays.copyOf(search.settledDistances, search.settledCount);
+      }));
+      Buckets buckets = new Buckets(settledIds, settledDistances);
+
+      ThreadLocal<SettlingSearch> forwardSearches = ThreadLocal.withInitial(() -> new SettlingSearch(
+          hierarchy.getNodeCount(), hierarchy.getUpwardGraph(), hierarchy.getBackwardGraph()));
+      double[][] table = new double[sourceIds.size()][];
+      ContractionHierarchy.run(pool, () -> IntStream.range(0, sourceIds.size()).parallel().forEach(i -> {
+        SettlingSearch search = forwardSearches.get();
+        search.run(sourceIds.get(i));
+        table[i] = buckets.scan(search, targetIds.size());
+      }));
+      System.out.println(String.format(
+          "Built %sx%s distance table with %s bucket entries in: [%f]s",
+          sourceIds.size(), targetIds.size(), buckets.getEntryCount(), tableTimer.endCounter()));
+      return table;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Bucket entries of every target, grouped by node in flat arrays: entries of a node are between two offsets.
+   */
+  private static class Buckets {
+    // Bucket number of each node holding entries.
+    private final HashIntIntMap bucketIndexes;
+    private final int[] offsets;
+    private final int[] targetIndexes;
+    private final double[] distances;
+
+    Buckets(int[][] settledIds, double[][] settledDistances) {
+      bucketIndexes = HashIntIntMaps.newMutableMap();
+      int[] counts = new int[16];
+      int entryCount = 0;
+      for (int[] nodeIds : settledIds) {
+        for (int nodeId : nodeIds) {
+          int bucket = bucketIndexes.getOrDefault(nodeId, -1);
+          if (bucket < 0) {
+            bucket = bucketIndexes.size();
+            bucketIndexes.put(nodeId, bucket);
+            if (bucket == counts.length) {
+              counts = Arrays.copyOf(counts, 2 * bucket);
+            }
+          }
+          counts[bucket]++;
+          entryCount++;
+        }
+      }
+      offsets = new int[bucketIndexes.size() + 1];
+      for (int bucket = 0; bucket < bucketIndexes.size(); bucket++) {
+        offsets[bucket + 1] = offsets[bucket] + counts[bucket];
+      }
+      // Next free slot of each bucket.
+      int[] positions = Arrays.copyOf(offsets, bucketIndexes.size());
+      targetIndexes = new int[entryCount];
+      distances = new double[entryCount];
+      for (int target = 0; target < settledIds.length; target++) {
+        for (int i = 0; i < settledIds[target].length; i++) {
+          int position = positions[bucketIndexes.get(settledIds[target][i])]++;
+          targetIndexes[position] = target;
+          distances[position] = settledDistances[target][i];
+        }
+      }
+    }
+
+    int getEntryCount() {
+      return distances.length;
+    }
+
+    /* Distances to every target through the nodes settled by a forward search. */
+    double[] scan(SettlingSearch search, int targetCount) {
+      double[] row = new double[targetCount];
+      Arrays.fill(row, Double.POSITIVE_INFINITY);
+      for (int i = 0; i < search.settledCount; i++) {
+        int bucket = bucketIndexes.getOrDefault(search.settledIds[i], -1);
+        if (bucket < 0) {
+          continue;
+        }
+        double fromDistance = search.settledDistances[i];
+        for (int entry = offsets[bucket]; entry < offsets[bucket + 1]; entry++) {
+          double distance = fromDistance + distances[entry];
+          if (distance < row[targetIndexes[entry]]) {
+            row[targetIndexes[entry]] = distance;
+          }
+        }
+      }
+      return row;
+    }
+  }
+
+  /**
+   * Exhaustive upward search keeping the nodes settled without being stalled. One instance per thread, arrays are
+   * reused by following searches.
+   */
+  private static class SettlingSearch extends UpwardSearch {
+    private int[] settledIds = new int[64];
+    private double[] settledDistances = new double[64];
+    private int settledCount;
+
+    SettlingSearch(int nodeCount, CompressedGraph graph, CompressedGraph stallGraph) {
+      super(nodeCount, graph, stallGraph);
+    }
+
+    void run(int sourceId) {
+      start(sourceId);
+      settledCount = 0;
+      while (!queue.isEmpty()) {
+        int nodeId = settleNext();
+        if (nodeId < 0) {
+          continue;
+        }
+        if (settledCount == settledIds.length) {
+          settledIds = Arrays.copyOf(settledIds, 2 * settledCount);
+          settledDistances = Arrays.copyOf(settledDistances, 2 * settledCount);
+        }
+        settledIds[settledCount] = nodeId;
+        settledDistances[settledCount++] = getSettledDistance();
+      }
+    }
+  }
+}
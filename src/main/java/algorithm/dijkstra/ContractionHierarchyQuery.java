@@ -0,0 +1,94 @@
+package algorithm.dijkstra;
+
+import instrumentation.ObjectSizeFetcher;
+import model.graph.CompressedGraph;
+
+import java.util.List;
+
+/**
+ * Point to point query on a ContractionHierarchy: a forward search from the source on the upward graph and a
+ * backward search from the target on the backward graph, both only going up. The shortest path is the best sum of
+ * both distances at a node reached by the two searches. A side stops once its smallest queued distance reaches the
+ * best sum, as every node it could still reach is further away. Both sides stall on demand, see UpwardSearch.
+ *
+ * State and queue of both sides are reused by following searches, so an instance must only be used by one thread.
+ */
+public class ContractionHierarchyQuery {
+  private final Side forward;
+  private final Side backward;
+  // Shortest path through a node reached by both sides so far.
+  private double bestDistance;
+
+  public ContractionHierarchyQuery(ContractionHierarchy hierarchy) {
+    CompressedGraph upward = hierarchy.getUpwardGraph();
+    CompressedGraph backwardGraph = hierarchy.getBackwardGraph();
+    // Relationships arriving at a node from higher ranked nodes are the ones of the other side.
+    this.forward = new Side(hierarchy.getNodeCount(), upward, backwardGraph);
+    this.backward = new Side(hierarchy.getNodeCount(), backwardGraph, upward);
+    forward.other = backward;
+    backward.other = forward;
+  }
+
+  /**
+   * Distances from the source to each target, one query per target.
+   */
+  public double[] findShortestPaths(int sourceId, List<Integer> targetIds) throws DijkstraOutOfMemoryError {
+    double[] shortestPaths = new double[targetIds.size()];
+    for (int i = 0; i < shortestPaths.length; i++) {
+      shortestPaths[i] = findShortestPath(sourceId, targetIds.get(i));
+    }
+    return shortestPaths;
+  }
+
+  public double findShortestPath(int sourceId, int targetId) throws DijkstraOutOfMemoryError {
+    if (sourceId == targetId) {
+      return 0.0;
+    }
+    try {
+      forward.start(sourceId);
+      backward.start(targetId);
+      bestDistance = Double.POSITIVE_INFINITY;
+      while (true) {
+        boolean forwardOpen = !forward.queue.isEmpty() && forward.queue.peekPriority() < bestDistance;
+        boolean backwardOpen = !backward.queue.isEmpty() && backward.queue.peekPriority() < bestDistance;
+        if (!forwardOpen && !backwardOpen) {
+          break;
+        }
+        // Sides alternate by smallest queued distance.
+        if (forwardOpen && (!backwardOpen || forward.queue.peekPriority() <= backward.queue.peekPriority())) {
+          forward.settleNext();
+        } else {
+          backward.settleNext();
+        }
+      }
+      if (Double.isInfinite(bestDistance)) {
+        throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+      }
+      return bestDistance;
+    } catch (OutOfMemoryError e) {
+      throw new DijkstraOutOfMemoryError(
+          ObjectSizeFetcher.getObjectFootprint(forward.queue) + ObjectSizeFetcher.getObjectFootprint(backward.queue),
+          ObjectSizeFetcher.getObjectFootprint(forward.state) + ObjectSizeFetcher.getObjectFootprint(backward.state));
+    }
+  }
+
+  /**
+   * Upward search of one direction, checking paths through the nodes it reaches.
+   */
+  private class Side extends UpwardSearch {
+    private Side other;
+
+    Side(int nodeCount, CompressedGraph graph, CompressedGraph stallGraph) {
+      super(nodeCount, graph, stallGraph);
+    }
+
+    /* Paths through a node the other side reached are candidates for the shortest path. */
+    @Override
+    void reached(int nodeId, double distance) {
+      int otherIndex = other.state.findIndex(nodeId);
+      if (otherIndex >= 0 && distance + other.state.getDistance(otherIndex) < bestDistance) {
+        bestDistance = distance + other.state.getDistance(otherIndex);
+      }
+    }
+  }
+}
@@ -1,30 +1,154 @@
 package algorithm.dijkstra;
 
 import common.Timer;
+import model.dijkstra.DijkstraState;
+import model.graph.CompressedGraph;
 import model.graph.Graph;
+import model.graph.PushdownGraph;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Builds cost matrix using Dijkstra single source algorithm for each node.
  */
 public class DijkstraCostMatrix {
+  // Largest number of nodes BIDIRECTIONAL searches pair by pair, set with -Ddijkstra.bidirectional.max.nodes.
+  // More nodes are searched one to many, as the number of pairs grows with the square of the nodes.
+  private static final int BIDIRECTIONAL_MAX_NODES = Integer.getInteger("dijkstra.bidirectional.max.nodes", 10);
 
+  /**
+   * Implementation used for each single source search.
+   */
+  public enum Engine {
+    // OneToManyDijkstra, with a DijkstraNode object per visited node and the given queue type.
+    NODE_MAP,
+    // PrimitiveOneToManyDijkstra, with primitive arrays for visited nodes and an indexed heap (queue type ignored).
+    PRIMITIVE_ARRAYS,
+    // Search runs inside the database, graph must be a PushdownGraph (queue type ignored).
+    PUSHDOWN,
+    // BidirectionalDijkstra for each pair of nodes, or PRIMITIVE_ARRAYS over BIDIRECTIONAL_MAX_NODES nodes or when the
+    // graph does not hold every node in memory, as the reverse graph is built first (queue type ignored).
+    BIDIRECTIONAL,
+    // AltOneToManyDijkstra, A* guided by the precomputed distances of Landmarks (queue type ignored).
+    ALT,
+    // ContractionHierarchyQuery for each pair of nodes, on the hierarchy built from the graph (queue type ignored).
+    CONTRACTION_HIERARCHY,
+    // ContractionHierarchyManyToMany for the whole matrix at once, with bucket entries left by one backward search
+    // per node and scanned by one forward search per node (queue type ignored).
+    CH_MANY_TO_MANY,
+    // MultiSourceDijkstra for the whole matrix at once, every source searching over one shared frontier that reads
+    // relationships of a node once for all of them (queue type and parallelism ignored).
+    MULTI_SOURCE,
+  }
+
+  /**
+   * Rows are computed by parallelism threads, each one with its own state and queue. The graph must be safe to read
+   * from several threads when parallelism is greater than 1.
+   */
   public static double[][] buildCostMatrix(
-      Graph graph, List<Integer> nodeIds, boolean symmetric, DijkstraQueue.Type queueType)
+      Graph graph,
+      List<Integer> nodeIds,
+      boolean symmetric,
+      DijkstraQueue.Type queueType,
+      Engine engine,
+      int parallelism)
       throws DijkstraOutOfMemoryError {
+    return buildCostMatrix(graph, nodeIds, symmetric, queueType, engine, parallelism, null, null);
+  }
+
+  /**
+   * Same as above, landmarks are only needed by the ALT engine and the hierarchy by the CONTRACTION_HIERARCHY and
+   * CH_MANY_TO_MANY engines.
+   */
+  public static double[][] buildCostMatrix(
+      Graph graph,
+      List<Integer> nodeIds,
+      boolean symmetric,
+      DijkstraQueue.Type queueType,
+      Engine engine,
+      int parallelism,
+      Landmarks landmarks,
+      ContractionHierarchy hierarchy)
+      throws DijkstraOutOfMemoryError {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException(String.format("Parallelism must be at least 1, got %s.", parallelism));
+    }
     double[][] costMatrix = new double[nodeIds.size()][nodeIds.size()];
+    // State and queue are reused by all searches of the same thread.
+    ThreadLocal<DijkstraState> states = ThreadLocal.withInitial(() -> new DijkstraState(graph.getNodeCount()));
+    ThreadLocal<IndexedHeap> queues = ThreadLocal.withInitial(IndexedHeap::new);
+    Engine searchEngine = engine == Engine.BIDIRECTIONAL
+        && (nodeIds.size() > BIDIRECTIONAL_MAX_NODES || graph.getNodeCount() < 0) ? Engine.PRIMITIVE_ARRAYS : engine;
+    if (searchEngine == Engine.ALT && landmarks == null) {
+      throw new IllegalArgumentException("ALT engine needs the landmarks of the graph.");
+    }
+    ThreadLocal<AltOneToManyDijkstra> altSearches =
+        ThreadLocal.withInitial(() -> new AltOneToManyDijkstra(landmarks, graph.getNodeCount()));
+    if ((searchEngine == Engine.CONTRACTION_HIERARCHY || searchEngine == Engine.CH_MANY_TO_MANY) && hierarchy == null) {
+      throw new IllegalArgumentException("Contraction hierarchy engine needs the hierarchy of the graph.");
+    }
+    ThreadLocal<ContractionHierarchyQuery> hierarchyQueries =
+        ThreadLocal.withInitial(() -> new ContractionHierarchyQuery(hierarchy));
+    // Reverse graph of BIDIRECTIONAL searches, built once in the try below as building it can fail like a search.
+    AtomicReference<Graph> reverseGraph = new AtomicReference<>();
+    ThreadLocal<BidirectionalDijkstra> bidirectionalSearches =
+        ThreadLocal.withInitial(() -> new BidirectionalDijkstra(graph, reverseGraph.get()));
     Timer costMatrixTimer = new Timer();
     try {
-      // Builds cost matrix using OneToManyDijkstra.
+      // Builds cost matrix using one search for each node.
       costMatrixTimer.startCounter();
-      for (int i = 0; i < nodeIds.size(); i++) {
-        costMatrix[i] = OneToManyDijkstra.findShortestPaths(graph, nodeIds.get(i), nodeIds, queueType);
+      if (searchEngine == Engine.BIDIRECTIONAL) {
+        reverseGraph.set(buildReverseGraph(graph));
+      }
+      if (searchEngine == Engine.CH_MANY_TO_MANY) {
+        costMatrix = ContractionHierarchyManyToMany.buildTable(hierarchy, nodeIds, nodeIds, parallelism);
+        for (double[] row : costMatrix) {
+          for (double distance : row) {
+            if (Double.isInfinite(distance)) {
+              throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+            }
+          }
+        }
+      } else if (searchEngine == Engine.MULTI_SOURCE) {
+        costMatrix = MultiSourceDijkstra.findShortestPaths(graph, nodeIds, nodeIds);
+      } else if (parallelism == 1) {
+        for (int i = 0; i < nodeIds.size(); i++) {
+          costMatrix[i] = findShortestPaths(graph, nodeIds.get(i), nodeIds, queueType, searchEngine, states, queues,
+              bidirectionalSearches, altSearches, hierarchyQueries);
+        }
+      } else {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+          List<Future<double[]>> rows = new ArrayList<>(nodeIds.size());
+          for (int i = 0; i < nodeIds.size(); i++) {
+            int sourceId = nodeIds.get(i);
+            rows.add(pool.submit(() -> findShortestPaths(graph, sourceId, nodeIds, queueType, searchEngine, states,
+                queues, bidirectionalSearches, altSearches, hierarchyQueries)));
+          }
+          for (int i = 0; i < nodeIds.size(); i++) {
+            costMatrix[i] = getRow(rows.get(i));
+          }
+        } finally {
+          pool.shutdownNow();
+        }
       }
       System.out.println(String.format("Built distance matrix in: [%f]s", costMatrixTimer.endCounter()));
     } catch (IllegalArgumentException e) {
       System.out.println(e.getMessage());
       System.out.println(String.format("Failed to build distance matrix in: [%f]s", costMatrixTimer.endCounter()));
+    } finally {
+      // Pool threads are discarded with the pool, the calling thread would keep its values until they are removed.
+      states.remove();
+      queues.remove();
+      altSearches.remove();
+      hierarchyQueries.remove();
+      // Holds the graph and its reverse copy.
+      bidirectionalSearches.remove();
     }
     // Make matrix symmetric for TSP.
     if (symmetric) {
@@ -51,4 +175,78 @@ public class DijkstraCostMatrix {
     }
     return costMatrix;
   }
+
+  private static double[] findShortestPaths(
+      Graph graph,
+      int sourceId,
+      List<Integer> nodeIds,
+      DijkstraQueue.Type queueType,
+      Engine engine,
+      ThreadLocal<DijkstraState> states,
+      ThreadLocal<IndexedHeap> queues,
+      ThreadLocal<BidirectionalDijkstra> bidirectionalSearches,
+      ThreadLocal<AltOneToManyDijkstra> altSearches,
+      ThreadLocal<ContractionHierarchyQuery> hierarchyQueries)
+      throws DijkstraOutOfMemoryError {
+    switch (engine) {
+      case NODE_MAP:
+        return OneToManyDijkstra.findShortestPaths(graph, sourceId, nodeIds, queueType);
+      case PRIMITIVE_ARRAYS:
+        return PrimitiveOneToManyDijkstra.findShortestPaths(graph, sourceId, nodeIds, states.get(), queues.get());
+      case PUSHDOWN:
+        if (!(graph instanceof PushdownGraph)) {
+          throw new IllegalArgumentException("Graph does not support searches in the database: " + graph);
+        }
+        double[] shortestPaths = ((PushdownGraph) graph).findShortestPaths(sourceId, nodeIds);
+        for (double shortestPath : shortestPaths) {
+          if (shortestPath < 0) {
+            throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+          }
+        }
+        return shortestPaths;
+      case BIDIRECTIONAL:
+        return bidirectionalSearches.get().findShortestPaths(sourceId, nodeIds);
+      case ALT:
+        return altSearches.get().findShortestPaths(graph, sourceId, nodeIds);
+      case CONTRACTION_HIERARCHY:
+        return hierarchyQueries.get().findShortestPaths(sourceId, nodeIds);
+      default:
+        throw new IllegalArgumentException("Engine not supported:" + engine);
+    }
+  }
+
+  /**
+   * Builds the reverse graph once, each thread then searches with its own BidirectionalDijkstra over both graphs.
+   */
+  private static Graph buildReverseGraph(Graph graph) {
+    Timer reverseTimer = new Timer();
+    reverseTimer.startCounter();
+    Graph reverseGraph = CompressedGraph.transpose(graph, graph.getNodeCount());
+    System.out.println(String.format("Built reverse graph in: [%f]s", reverseTimer.endCounter()));
+    return reverseGraph;
+  }
+
+  /**
+   * Waits for a row computed by the pool, rethrowing the exception thrown by the search.
+   */
+  private static double[] getRow(Future<double[]> row) throws DijkstraOutOfMemoryError {
+    try {
+      return row.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while building distance matrix.", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof DijkstraOutOfMemoryError) {
+        throw (DijkstraOutOfMemoryError) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Error building distance matrix.", cause);
+    }
+  }
 }
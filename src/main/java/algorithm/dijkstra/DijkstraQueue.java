@@ -2,6 +2,7 @@ package algorithm.dijkstra;
 
 import model.dijkstra.DijkstraNode;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.PriorityQueue;
 
@@ -12,12 +13,30 @@ public class DijkstraQueue {
 
   public enum Type {
     PRIORITY_QUEUE,
-//    FIBONACCI_HEAP,
+    // FibonacciHeap with amortized O(1) decrease key.
+    FIBONACCI_HEAP,
+    // IndexedHeap with O(log n) decrease key, arity from system property dijkstra.heap.arity (2, 4 or 8).
+    INDEXED_DARY_HEAP,
+    // PairingHeap with O(1) decrease key (cut and meld with the root).
+    PAIRING_HEAP,
+    // RadixHeap over priorities scaled to long by system property dijkstra.radix.scale (1e12 if not set).
+    // Nodes with priorities closer than 1 / scale may be extracted out of order, so a distance found may exceed
+    // the exact one by at most (number of relationships in the shortest path) / scale.
+    RADIX_HEAP,
   }
 
+  private static final double RADIX_SCALE =
+      Double.parseDouble(System.getProperty("dijkstra.radix.scale", "1e12"));
+
   private Type type;
-//  private FibonacciHeap fibonacciHeap;
+  private FibonacciHeap<DijkstraNode> fibonacciHeap;
+  private PairingHeap<DijkstraNode> pairingHeap;
   private PriorityQueue<DijkstraNode> priorityQueue;
+  private IndexedHeap indexedHeap;
+  private RadixHeap radixHeap;
+  // Nodes by the queue index handed to them, used by INDEXED_DARY_HEAP and RADIX_HEAP.
+  private DijkstraNode[] indexedNodes;
+  private int indexedNodeCount;
 
   public DijkstraQueue(Type type) {
     this.type = type;
@@ -26,9 +45,20 @@ public class DijkstraQueue {
         //noinspection Since15
         priorityQueue = new PriorityQueue<DijkstraNode>(new DijkstraNodeComparator());
         break;
-//      case FIBONACCI_HEAP:
-//        fibonacciHeap = new FibonacciHeap<>();
-//        break;
+      case INDEXED_DARY_HEAP:
+        indexedHeap = new IndexedHeap();
+        indexedNodes = new DijkstraNode[1 << 10];
+        break;
+      case RADIX_HEAP:
+        radixHeap = new RadixHeap();
+        indexedNodes = new DijkstraNode[1 << 10];
+        break;
+      case FIBONACCI_HEAP:
+        fibonacciHeap = new FibonacciHeap<>();
+        break;
+      case PAIRING_HEAP:
+        pairingHeap = new PairingHeap<>();
+        break;
       default:
         throw new IllegalArgumentException("Type not supported:" + type);
     }
@@ -39,9 +69,18 @@ public class DijkstraQueue {
       case PRIORITY_QUEUE:
         priorityQueue.add(node);
         break;
-//      case FIBONACCI_HEAP:
-//        node.setQueueEntry(fibonacciHeap.enqueue(node, priority));
-//        break;
+      case INDEXED_DARY_HEAP:
+        indexedHeap.enqueue(getQueueIndex(node), priority);
+        break;
+      case RADIX_HEAP:
+        radixHeap.enqueue(getQueueIndex(node), toRadixKey(priority));
+        break;
+      case FIBONACCI_HEAP:
+        node.setQueueEntry(fibonacciHeap.enqueue(node, priority));
+        break;
+      case PAIRING_HEAP:
+        node.setPairingQueueEntry(pairingHeap.enqueue(node, priority));
+        break;
       default:
         throw new IllegalArgumentException("Type not supported:" + type);
     }
@@ -51,8 +90,14 @@ public class DijkstraQueue {
     switch (type) {
       case PRIORITY_QUEUE:
         return priorityQueue.isEmpty();
-//      case FIBONACCI_HEAP:
-//        return fibonacciHeap.isEmpty();
+      case INDEXED_DARY_HEAP:
+        return indexedHeap.isEmpty();
+      case RADIX_HEAP:
+        return radixHeap.isEmpty();
+      case FIBONACCI_HEAP:
+        return fibonacciHeap.isEmpty();
+      case PAIRING_HEAP:
+        return pairingHeap.isEmpty();
       default:
         throw new IllegalArgumentException("Type not supported:" + type);
     }
@@ -62,8 +107,19 @@ public class DijkstraQueue {
     switch (type) {
       case PRIORITY_QUEUE:
         return (DijkstraNode) priorityQueue.poll();
-//      case FIBONACCI_HEAP:
-//        return (DijkstraNode) fibonacciHeap.dequeueMin().getValue();
+      case INDEXED_DARY_HEAP:
+        return indexedNodes[indexedHeap.extractMin()];
+      case RADIX_HEAP:
+        return indexedNodes[radixHeap.extractMin()];
+      case FIBONACCI_HEAP:
+        // Entry is dropped once dequeued, so a later update knows the node left the heap.
+        DijkstraNode fibonacciMin = fibonacciHeap.dequeueMin().getValue();
+        fibonacciMin.setQueueEntry(null);
+        return fibonacciMin;
+      case PAIRING_HEAP:
+        DijkstraNode pairingMin = pairingHeap.dequeueMin().getValue();
+        pairingMin.setPairingQueueEntry(null);
+        return pairingMin;
       default:
         throw new IllegalArgumentException("Type not supported:" + type);
     }
@@ -75,9 +131,35 @@ public class DijkstraQueue {
         priorityQueue.remove(node);
         priorityQueue.add(node);
         break;
-//      case FIBONACCI_HEAP:
-//        fibonacciHeap.decreaseKey(node.getQueueEntry(), priority);
-//        break;
+      case INDEXED_DARY_HEAP:
+        // Node may have left the queue already, it is then queued again as PRIORITY_QUEUE does.
+        if (indexedHeap.contains(getQueueIndex(node))) {
+          indexedHeap.decreasePriority(node.getQueueIndex(), priority);
+        } else {
+          indexedHeap.enqueue(node.getQueueIndex(), priority);
+        }
+        break;
+      case RADIX_HEAP:
+        if (radixHeap.contains(getQueueIndex(node))) {
+          radixHeap.decreaseKey(node.getQueueIndex(), toRadixKey(priority));
+        } else {
+          radixHeap.enqueue(node.getQueueIndex(), toRadixKey(priority));
+        }
+        break;
+      case FIBONACCI_HEAP:
+        if (node.getQueueEntry() != null) {
+          fibonacciHeap.decreaseKey(node.getQueueEntry(), priority);
+        } else {
+          node.setQueueEntry(fibonacciHeap.enqueue(node, priority));
+        }
+        break;
+      case PAIRING_HEAP:
+        if (node.getPairingQueueEntry() != null) {
+          pairingHeap.decreaseKey(node.getPairingQueueEntry(), priority);
+        } else {
+          node.setPairingQueueEntry(pairingHeap.enqueue(node, priority));
+        }
+        break;
       default:
         throw new IllegalArgumentException("Type not supported:" + type);
     }
@@ -87,14 +169,39 @@ public class DijkstraQueue {
     switch (type) {
       case PRIORITY_QUEUE:
         return priorityQueue.size();
-//      case FIBONACCI_HEAP:
-//        fibonacciHeap.decreaseKey(node.getQueueEntry(), priority);
-//        break;
+      case INDEXED_DARY_HEAP:
+        return indexedHeap.size();
+      case RADIX_HEAP:
+        return radixHeap.size();
+      case FIBONACCI_HEAP:
+        return fibonacciHeap.size();
+      case PAIRING_HEAP:
+        return pairingHeap.size();
       default:
         throw new IllegalArgumentException("Type not supported:" + type);
     }
   }
 
+  private static long toRadixKey(double priority) {
+    double key = Math.rint(priority * RADIX_SCALE);
+    if (key >= Long.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          String.format("Priority %s too large for radix scale %s.", priority, RADIX_SCALE));
+    }
+    return (long) key;
+  }
+
+  private int getQueueIndex(DijkstraNode node) {
+    if (node.getQueueIndex() < 0) {
+      if (indexedNodeCount == indexedNodes.length) {
+        indexedNodes = Arrays.copyOf(indexedNodes, indexedNodeCount * 2);
+      }
+      indexedNodes[indexedNodeCount] = node;
+      node.setQueueIndex(indexedNodeCount++);
+    }
+    return node.getQueueIndex();
+  }
+
   public class DijkstraNodeComparator implements Comparator<DijkstraNode> {
     @Override
     public int compare(DijkstraNode x, DijkstraNode y) {
@@ -0,0 +1,135 @@
+package algorithm.dijkstra;
+
+import java.util.Arrays;
+
+/**
+ * D-ary min heap of int elements with double priorities, kept in primitive arrays.
+ * Position of every element in the heap is indexed by the element itself, so decreasing a priority
+ * is a sift up from a known slot instead of a linear search.
+ *
+ * Arity defaults to the system property dijkstra.heap.arity (4 if not set). Wider heaps are shallower,
+ * which makes decrease key cheaper and keeps the children compared on extraction in the same cache line.
+ */
+public class IndexedHeap {
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  private static final int DEFAULT_ARITY = Integer.getInteger("dijkstra.heap.arity", 4);
+
+  private final int arity;
+
+  private int[] elements = new int[INITIAL_CAPACITY];
+  private double[] priorities = new double[INITIAL_CAPACITY];
+  // Slot of each element in the heap, -1 when element is not queued.
+  private int[] positions = new int[0];
+  private int size;
+
+  public IndexedHeap() {
+    this(DEFAULT_ARITY);
+  }
+
+  public IndexedHeap(int arity) {
+    if (arity != 2 && arity != 4 && arity != 8) {
+      throw new IllegalArgumentException("Heap arity not supported:" + arity);
+    }
+    this.arity = arity;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(int element) {
+    return element < positions.length && positions[element] >= 0;
+  }
+
+  public void enqueue(int element, double priority) {
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, size * 2);
+      priorities = Arrays.copyOf(priorities, size * 2);
+    }
+    if (element >= positions.length) {
+      int oldLength = positions.length;
+      positions = Arrays.copyOf(positions, Math.max(element + 1, oldLength + (oldLength >> 1)));
+      Arrays.fill(positions, oldLength, positions.length, -1);
+    }
+    siftUp(size++, element, priority);
+  }
+
+  /* Priority of the element extractMin would return, the heap must not be empty. */
+  public double peekPriority() {
+    return priorities[0];
+  }
+
+  public int extractMin() {
+    int min = elements[0];
+    positions[min] = -1;
+    size--;
+    if (size > 0) {
+      siftDown(0, elements[size], priorities[size]);
+    }
+    return min;
+  }
+
+  /* Decreases priority of an element already in the heap. */
+  public void decreasePriority(int element, double priority) {
+    siftUp(positions[element], element, priority);
+  }
+
+  /* Removes all elements, keeping allocated arrays. */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      positions[elements[i]] = -1;
+    }
+    size = 0;
+  }
+
+  private void siftUp(int slot, int element, double priority) {
+    while (slot > 0) {
+      int parent = (slot - 1) / arity;
+      if (priorities[parent] <= priority) {
+        break;
+      }
+      move(parent, slot);
+      slot = parent;
+    }
+    place(slot, element, priority);
+  }
+
+  private void siftDown(int slot, int element, double priority) {
+    while (true) {
+      int firstChild = arity * slot + 1;
+      if (firstChild >= size) {
+        break;
+      }
+      // Smallest of up to arity children.
+      int child = firstChild;
+      int lastChild = Math.min(firstChild + arity, size);
+      for (int i = firstChild + 1; i < lastChild; i++) {
+        if (priorities[i] < priorities[child]) {
+          child = i;
+        }
+      }
+      if (priorities[child] >= priority) {
+        break;
+      }
+      move(child, slot);
+      slot = child;
+    }
+    place(slot, element, priority);
+  }
+
+  private void move(int from, int to) {
+    elements[to] = elements[from];
+    priorities[to] = priorities[from];
+    positions[elements[to]] = to;
+  }
+
+  private void place(int slot, int element, double priority) {
+    elements[slot] = element;
+    priorities[slot] = priority;
+    positions[element] = slot;
+  }
+}
@@ -0,0 +1,217 @@
+package algorithm.dijkstra;
+
+import common.Timer;
+import model.graph.CompressedGraph;
+import model.graph.Graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Distances from and to a few landmark nodes, giving lower bounds of the distance between any two nodes by the
+ * triangle inequality: d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L) for every landmark L.
+ * Used by AltOneToManyDijkstra as A* potentials, as graphs have no coordinates for a geometric bound.
+ *
+ * Landmarks are chosen by farthest selection: the first one is the node farthest from node 0, each next one the
+ * node farthest from the landmarks chosen so far. Landmarks at the border of the graph give the tightest bounds.
+ *
+ * Distances are floats, 8 bytes per node and landmark, and distances of a node to every landmark are stored next to
+ * each other, so a bound reads two short runs of memory. The file is memory mapped like MappedGraph, so only pages of
+ * nodes reached by a search are read and nothing is copied to the heap.
+ * File layout (big endian):
+ * int magic, int version, int nodeCount, int landmarkCount, int[landmarkCount] landmark ids,
+ * float[nodeCount * landmarkCount * 2] distances, d(L, v) then d(v, L) for each landmark L of each node v.
+ */
+public class Landmarks {
+  static final String LANDMARKS_FILE_TEMPLATE = "graph.%s.landmarks";
+  static final int MAGIC = 0x5453414c;
+  static final int VERSION = 2;
+  static final int HEADER_BYTES = 4 * Integer.BYTES;
+  // Number of landmarks chosen when exporting, set with -Dalt.landmarks. 0 skips the export.
+  public static final int COUNT = Integer.getInteger("alt.landmarks", 8);
+  // Nodes per mapped segment, as a single mapping cannot exceed 2 GB.
+  private static final int SEGMENT_SHIFT = 20;
+  // A float is within 2^-24 times the distance it stores, bounds subtract distances scaled by twice that so they
+  // stay below the true distance.
+  private static final double ROUNDING = 0x1p-23;
+
+  private final int nodeCount;
+  private final int[] landmarkIds;
+  // Distances of nodes i << SEGMENT_SHIFT and following ones are in segment i.
+  private final FloatBuffer[] segments;
+
+  private Landmarks(int nodeCount, int[] landmarkIds, FloatBuffer[] segments) {
+    this.nodeCount = nodeCount;
+    this.landmarkIds = landmarkIds;
+    this.segments = segments;
+  }
+
+  public static File getLandmarksFile(Graph.Country graphCountry) {
+    return new File(String.format(LANDMARKS_FILE_TEMPLATE, graphCountry.toString().toLowerCase()));
+  }
+
+  /**
+   * Chooses up to count landmarks among nodes 0 to nodeCount - 1 and computes their distances, with two full
+   * searches per landmark. Fewer landmarks are returned when every node left is already a landmark or unreachable.
+   * Distances are kept on the heap until exported, nodeCount * count * 8 bytes.
+   */
+  public static Landmarks select(Graph graph, int nodeCount, int count) {
+    if ((long) nodeCount * count * 2 > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException(
+          String.format("Too many distances for %s landmarks of %s nodes.", count, nodeCount));
+    }
+    Timer selectTimer = new Timer();
+    selectTimer.startCounter();
+    Graph reverseGraph = CompressedGraph.transpose(graph, nodeCount);
+    float[] distances = new float[nodeCount * count * 2];
+    int[] landmarkIds = new int[count];
+    // Distance from the closest landmark chosen so far, the next landmark is the farthest reachable node.
+    double[] closestDistances = PrimitiveOneToManyDijkstra.findAllShortestPaths(graph, nodeCount, 0);
+    int landmarkCount = 0;
+    while (landmarkCount < count) {
+      int landmarkId = -1;
+      for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+        double distance = closestDistances[nodeId];
+        if (!Double.isInfinite(distance) && (landmarkId < 0 || distance > closestDistances[landmarkId])) {
+          landmarkId = nodeId;
+        }
+      }
+      if (landmarkId < 0 || (landmarkCount > 0 && closestDistances[landmarkId] == 0.0)) {
+        break;
+      }
+      if (landmarkCount == 0) {
+        Arrays.fill(closestDistances, Double.POSITIVE_INFINITY);
+      }
+      double[] from = PrimitiveOneToManyDijkstra.findAllShortestPaths(graph, nodeCount, landmarkId);
+      double[] to = PrimitiveOneToManyDijkstra.findAllShortestPaths(reverseGraph, nodeCount, landmarkId);
+      for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+        distances[(nodeId * count + landmarkCount) * 2] = (float) from[nodeId];
+        distances[(nodeId * count + landmarkCount) * 2 + 1] = (float) to[nodeId];
+        closestDistances[nodeId] = Math.min(closestDistances[nodeId], from[nodeId]);
+      }
+      landmarkIds[landmarkCount++] = landmarkId;
+    }
+    System.out.println(String.format("Selected %s landmarks in: %ss", landmarkCount, selectTimer.endCounter()));
+    if (landmarkCount < count) {
+      // Drops the slots of landmarks that could not be chosen.
+      float[] packedDistances = new float[nodeCount * landmarkCount * 2];
+      for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+        System.arraycopy(
+            distances, nodeId * count * 2, packedDistances, nodeId * landmarkCount * 2, landmarkCount * 2);
+      }
+      distances = packedDistances;
+      landmarkIds = Arrays.copyOf(landmarkIds, landmarkCount);
+    }
+    FloatBuffer[] segments = new FloatBuffer[getSegmentCount(nodeCount)];
+    int segmentLength = (1 << SEGMENT_SHIFT) * landmarkCount * 2;
+    for (int i = 0; i < segments.length; i++) {
+      int start = i * segmentLength;
+      segments[i] = FloatBuffer.wrap(distances, start, Math.min(segmentLength, distances.length - start)).slice();
+    }
+    return new Landmarks(nodeCount, landmarkIds, segments);
+  }
+
+  public void export(File landmarksFile) {
+    try (DataOutputStream output =
+             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(landmarksFile), 1 << 16))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(nodeCount);
+      output.writeInt(landmarkIds.length);
+      for (int landmarkId : landmarkIds) {
+        output.writeInt(landmarkId);
+      }
+      for (FloatBuffer segment : segments) {
+        for (int i = 0; i < segment.limit(); i++) {
+          output.writeFloat(segment.get(i));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error writing landmarks file: %s", landmarksFile), e);
+    }
+  }
+
+  /**
+   * Maps distances of the file, the mapping stays valid after the file is closed.
+   */
+  public static Landmarks read(File landmarksFile) {
+    Timer readTimer = new Timer();
+    readTimer.startCounter();
+    try (RandomAccessFile file = new RandomAccessFile(landmarksFile, "r")) {
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt() != MAGIC) {
+        throw new IllegalArgumentException(String.format("Not a landmarks file: %s", landmarksFile));
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException(String.format(
+            "Unsupported landmarks file version %s in %s, expected %s.", version, landmarksFile, VERSION));
+      }
+      int nodeCount = header.getInt();
+      int[] landmarkIds = new int[header.getInt()];
+      channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) landmarkIds.length * Integer.BYTES)
+          .asIntBuffer().get(landmarkIds);
+      long distancesPosition = HEADER_BYTES + (long) landmarkIds.length * Integer.BYTES;
+      long nodeBytes = (long) landmarkIds.length * 2 * Float.BYTES;
+      FloatBuffer[] segments = new FloatBuffer[getSegmentCount(nodeCount)];
+      for (int i = 0; i < segments.length; i++) {
+        long firstNodeId = (long) i << SEGMENT_SHIFT;
+        long segmentNodes = Math.min(1 << SEGMENT_SHIFT, nodeCount - firstNodeId);
+        segments[i] = channel.map(
+            FileChannel.MapMode.READ_ONLY, distancesPosition + firstNodeId * nodeBytes, segmentNodes * nodeBytes)
+            .asFloatBuffer();
+      }
+      System.out.println(String.format(
+          "Mapped %s landmarks of %s nodes in: %ss", landmarkIds.length, nodeCount, readTimer.endCounter()));
+      return new Landmarks(nodeCount, landmarkIds, segments);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error reading landmarks file: %s", landmarksFile), e);
+    }
+  }
+
+  public int getCount() {
+    return landmarkIds.length;
+  }
+
+  /**
+   * Lower bound of the distance from one node to another, 0 when one of them has no landmark distances. Infinite
+   * when the landmarks prove the target cannot be reached.
+   */
+  public double getLowerBound(int fromId, int toId) {
+    if (fromId < 0 || fromId >= nodeCount || toId < 0 || toId >= nodeCount) {
+      return 0.0;
+    }
+    FloatBuffer fromSegment = segments[fromId >>> SEGMENT_SHIFT];
+    FloatBuffer toSegment = segments[toId >>> SEGMENT_SHIFT];
+    int from = (fromId & ((1 << SEGMENT_SHIFT) - 1)) * landmarkIds.length * 2;
+    int to = (toId & ((1 << SEGMENT_SHIFT) - 1)) * landmarkIds.length * 2;
+    double bound = 0.0;
+    // Differences of two infinite distances are NaN and fail both comparisons, so they bound nothing. Scaling keeps
+    // an infinite minuend infinite.
+    for (int i = 0; i < landmarkIds.length * 2; i += 2) {
+      double landmarkBefore = toSegment.get(to + i) * (1 - ROUNDING) - fromSegment.get(from + i) * (1 + ROUNDING);
+      double landmarkAfter =
+          fromSegment.get(from + i + 1) * (1 - ROUNDING) - toSegment.get(to + i + 1) * (1 + ROUNDING);
+      if (landmarkBefore > bound) {
+        bound = landmarkBefore;
+      }
+      if (landmarkAfter > bound) {
+        bound = landmarkAfter;
+      }
+    }
+    return bound;
+  }
+
+  private static int getSegmentCount(int nodeCount) {
+    return Math.max(1, (int) (((long) nodeCount + (1 << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT));
+  }
+}
@@ -0,0 +1,256 @@
+package algorithm.dijkstra;
+
+import com.koloboke.collect.map.hash.HashIntIntMap;
+import com.koloboke.collect.map.hash.HashIntIntMaps;
+import instrumentation.ObjectSizeFetcher;
+import model.graph.Graph;
+import model.graph.RelationshipConsumer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One to many Dijkstra from every source at once over a shared frontier, so relationships of a node are read once
+ * for all the sources reaching it instead of once per search.
+ *
+ * Each visited node holds a vector of distances, one per source, and marks the ones not expanded yet as pending. A
+ * single queue orders nodes by their smallest pending distance. When a node is extracted, its relationships are read
+ * once and relaxed for every pending source within (1 + SLACK) times that distance. Sources left pending keep the node
+ * queued. A source expanded early may improve later, it is then pending again, so distances are exact and SLACK
+ * trades relationship reads for expansions: 0 expands every label once, larger values share more reads.
+ *
+ * The search stops once every source reached every target and the queue is past the largest of those distances.
+ * Memory is the number of visited nodes times the number of sources, 9 bytes each, and is bounded by MAX_LABELS:
+ * searches needing more fail with DijkstraOutOfMemoryError, before starting when the sources and targets alone do not
+ * fit.
+ */
+public class MultiSourceDijkstra implements RelationshipConsumer {
+  // Pending distances up to (1 + SLACK) times the smallest one of a node are expanded together,
+  // set with -Ddijkstra.multisource.slack.
+  static final double SLACK = Double.parseDouble(System.getProperty("dijkstra.multisource.slack", "0.05"));
+  // Largest number of distances held, visited nodes times sources, set with -Ddijkstra.multisource.max.labels.
+  // Defaults to what a third of the maximum heap holds, never more than the largest array.
+  static final long MAX_LABELS = Math.min(Integer.MAX_VALUE - 8, Long.getLong("dijkstra.multisource.max.labels",
+      Runtime.getRuntime().maxMemory() / 3 / (Double.BYTES + 1)));
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  // Pops between two updates of the largest target distance.
+  private static final int RADIUS_CHECK_INTERVAL = 1 << 12;
+
+  private final Graph graph;
+  private final int sourceCount;
+  private final double slack;
+  // Slot of each visited node, vectors of a node start at slot * sourceCount.
+  private final HashIntIntMap slots = HashIntIntMaps.newMutableMap(INITIAL_CAPACITY);
+  private int[] nodeIds;
+  private double[] keys;
+  private boolean[] targetSlots;
+  private double[] distances;
+  private boolean[] pending;
+  private final IndexedHeap queue = new IndexedHeap();
+  // Node being expanded and the sources expanded with it.
+  private int expandedSlot;
+  private final int[] expandedSources;
+  private int expandedCount;
+  // Nodes visited for the first time while relaxing the current node.
+  private int[] discovered = new int[16];
+  private int discoveredCount;
+  // Pairs of source and target with a distance, the search cannot stop before all are reached.
+  private long reachedPairs;
+
+  private MultiSourceDijkstra(Graph graph, int sourceCount, double slack, int capacity) {
+    this.graph = graph;
+    this.sourceCount = sourceCount;
+    this.slack = slack;
+    nodeIds = new int[capacity];
+    keys = new double[capacity];
+    targetSlots = new boolean[capacity];
+    distances = new double[capacity * sourceCount];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    pending = new boolean[capacity * sourceCount];
+    expandedSources = new int[sourceCount];
+  }
+
+  /**
+   * Distances from each source to each target, one row per source.
+   */
+  public static double[][] findShortestPaths(Graph graph, List<Integer> sourceIds, List<Integer> targetIds)
+      throws DijkstraOutOfMemoryError {
+    // Every source and target gets a slot, so fewer labels can never be enough.
+    long neededLabels = (long) (sourceIds.size() + targetIds.size()) * sourceIds.size();
+    if (neededLabels > MAX_LABELS) {
+      throw new DijkstraOutOfMemoryError(
+          String.format("Multi-source labels needed by %s sources and %s targets: at least %s",
+              sourceIds.size(), targetIds.size(), neededLabels),
+          String.format("Multi-source labels allowed: %s", MAX_LABELS));
+    }
+    int capacity = (int) Math.min(INITIAL_CAPACITY, MAX_LABELS / Math.max(1, sourceIds.size()));
+    return new MultiSourceDijkstra(graph, sourceIds.size(), SLACK, capacity).run(sourceIds, targetIds);
+  }
+
+  private double[][] run(List<Integer> sourceIds, List<Integer> targetIds) throws DijkstraOutOfMemoryError {
+    try {
+      for (int targetId : targetIds) {
+        targetSlots[slotOf(targetId)] = true;
+      }
+      // Targets got the first slots, duplicates share one.
+      long targetPairs = (long) slots.size() * sourceCount;
+      discoveredCount = 0;
+      for (int source = 0; source < sourceCount; source++) {
+        int slot = slotOf(sourceIds.get(source));
+        relax(slot, source, 0.0);
+      }
+      long reads = 0;
+      long expansions = 0;
+      double radius = Double.POSITIVE_INFINITY;
+      while (!queue.isEmpty()) {
+        double key = queue.peekPriority();
+        if (reachedPairs == targetPairs && (reads % RADIUS_CHECK_INTERVAL == 0 || key >= radius)) {
+          radius = getTargetRadius();
+        }
+        if (key >= radius) {
+          break;
+        }
+        expandedSlot = queue.extractMin();
+        // Sources expanded now, the others stay pending.
+        int base = expandedSlot * sourceCount;
+        double limit = key * (1 + slack);
+        expandedCount = 0;
+        for (int source = 0; source < sourceCount; source++) {
+          if (pending[base + source] && distances[base + source] <= limit) {
+            pending[base + source] = false;
+            expandedSources[expandedCount++] = source;
+          }
+        }
+        graph.forEachRelationship(nodeIds[expandedSlot], this);
+        reads++;
+        expansions += expandedCount;
+        double remainingKey = Double.POSITIVE_INFINITY;
+        for (int source = 0; source < sourceCount; source++) {
+          if (pending[base + source]) {
+            remainingKey = Math.min(remainingKey, distances[base + source]);
+          }
+        }
+        if (!Double.isInfinite(remainingKey)) {
+          enqueue(expandedSlot, remainingKey);
+        }
+        // Lets the graph load relationships of discovered nodes together, before they are expanded one by one.
+        if (discoveredCount > 0) {
+          graph.prefetch(discovered, discoveredCount);
+          discoveredCount = 0;
+        }
+      }
+      System.out.println(String.format(
+          "Multi-source Dijkstra relationship reads: %s, expanded distances: %s, visited nodes: %s",
+          reads, expansions, slots.size()));
+
+      double[][] shortestPaths = new double[sourceCount][targetIds.size()];
+      for (int j = 0; j < targetIds.size(); j++) {
+        int base = slots.get((int) targetIds.get(j)) * sourceCount;
+        for (int source = 0; source < sourceCount; source++) {
+          if (Double.isInfinite(distances[base + source])) {
+            throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+          }
+          shortestPaths[source][j] = distances[base + source];
+        }
+      }
+      return shortestPaths;
+    } catch (OutOfMemoryError e) {
+      throw new DijkstraOutOfMemoryError(
+          ObjectSizeFetcher.getObjectFootprint(queue), ObjectSizeFetcher.getObjectFootprint(distances));
+    }
+  }
+
+  @Override
+  public void accept(int endNodeId, double cost) {
+    int slot = slotOf(endNodeId);
+    int base = expandedSlot * sourceCount;
+    double key = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < expandedCount; i++) {
+      int source = expandedSources[i];
+      double newDistance = distances[base + source] + cost;
+      if (newDistance < distances[slot * sourceCount + source]) {
+        setDistance(slot, source, newDistance);
+        key = Math.min(key, newDistance);
+      }
+    }
+    if (!Double.isInfinite(key)) {
+      enqueue(slot, key);
+    }
+  }
+
+  private void relax(int slot, int source, double distance) {
+    if (distance < distances[slot * sourceCount + source]) {
+      setDistance(slot, source, distance);
+      enqueue(slot, distance);
+    }
+  }
+
+  private void setDistance(int slot, int source, double distance) {
+    int position = slot * sourceCount + source;
+    if (targetSlots[slot] && Double.isInfinite(distances[position])) {
+      reachedPairs++;
+    }
+    distances[position] = distance;
+    pending[position] = true;
+  }
+
+  /* Queues the node, or lowers its key when already queued with a larger one. */
+  private void enqueue(int slot, double key) {
+    if (!queue.contains(slot)) {
+      keys[slot] = key;
+      queue.enqueue(slot, key);
+    } else if (key < keys[slot]) {
+      keys[slot] = key;
+      queue.decreasePriority(slot, key);
+    }
+  }
+
+  /* Largest distance from a source to a target found so far. */
+  private double getTargetRadius() {
+    double radius = 0.0;
+    for (int slot = 0; slot < slots.size(); slot++) {
+      if (targetSlots[slot]) {
+        for (int source = 0; source < sourceCount; source++) {
+          radius = Math.max(radius, distances[slot * sourceCount + source]);
+        }
+      }
+    }
+    return radius;
+  }
+
+  /* Returns the slot of the node, giving it a new one with infinite distances if it was never visited. */
+  private int slotOf(int nodeId) {
+    int slot = slots.getOrDefault(nodeId, -1);
+    if (slot >= 0) {
+      return slot;
+    }
+    slot = slots.size();
+    slots.put(nodeId, slot);
+    if (slot == nodeIds.length) {
+      // Labels are counted in longs, as visited nodes times sources overflows an int long before memory runs out.
+      long capacity = Math.min(slot + (slot >> 1) + 1L, MAX_LABELS / Math.max(1, sourceCount));
+      if (capacity <= slot) {
+        // Caught by run, which reports the footprint of the search.
+        throw new OutOfMemoryError(String.format(
+            "Multi-source labels of %s visited nodes and %s sources exceed %s.", slot + 1, sourceCount, MAX_LABELS));
+      }
+      grow((int) capacity);
+    }
+    nodeIds[slot] = nodeId;
+    if (discoveredCount == discovered.length) {
+      discovered = Arrays.copyOf(discovered, discoveredCount * 2);
+    }
+    discovered[discoveredCount++] = nodeId;
+    return slot;
+  }
+
+  private void grow(int capacity) {
+    nodeIds = Arrays.copyOf(nodeIds, capacity);
+    keys = Arrays.copyOf(keys, capacity);
+    targetSlots = Arrays.copyOf(targetSlots, capacity);
+    int labelCount = distances.length;
+    distances = Arrays.copyOf(distances, capacity * sourceCount);
+    Arrays.fill(distances, labelCount, distances.length, Double.POSITIVE_INFINITY);
+    pending = Arrays.copyOf(pending, capacity * sourceCount);
+  }
+}
@@ -3,10 +3,9 @@ package algorithm.dijkstra;
 import instrumentation.ObjectSizeFetcher;
 import model.dijkstra.DijkstraNode;
 import model.graph.Graph;
-import model.graph.Node;
-import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,43 +30,19 @@ public class OneToManyDijkstra {
 
     try {
       // Origin is visited and becomes gray.
-      Node source = graph.getNode(sourceId);
-      DijkstraNode startNode;
-      if (!dijkstraNodeMap.containsKey(sourceId)) {
-        startNode = new DijkstraNode(source);
-        dijkstraNodeMap.put(sourceId, startNode);
-      } else {
-        startNode = dijkstraNodeMap.get(sourceId);
-      }
+      DijkstraNode startNode = new DijkstraNode(sourceId);
+      dijkstraNodeMap.put(sourceId, startNode);
       startNode.setGray();
       startNode.setDistancetoNode(0.0);
       queue.enqueue(startNode, 0.0);
 
+      // Relationships are visited in place, only the ids and costs are read from the graph.
+      Relaxation relaxation = new Relaxation(queue, dijkstraNodeMap);
       while (!queue.isEmpty() && remainingTargetsIds != 0) {
         DijkstraNode dijkstraNode = queue.extractMin();
-        List<Relationship> relationships = new ArrayList<>(graph.getNode(dijkstraNode.getNodeId()).getRelationships());
-        for (Relationship relationship : relationships) {
-          Node target = graph.getNode(relationship.getEndNodeId());
-          DijkstraNode toNode;
-          if (dijkstraNodeMap.containsKey(target.getId())) {
-            toNode = dijkstraNodeMap.get(target.getId());
-          } else {
-            toNode = new DijkstraNode(target);
-            dijkstraNodeMap.put(target.getId(), toNode);
-          }
-          double newDistance = dijkstraNode.getDistancetoNode() + relationship.getCost();
-          if (toNode.isWhite() || newDistance < toNode.getDistancetoNode()) {
-            toNode.setDistancetoNode(newDistance);
-            if (toNode.isWhite()) {
-              // White becomes gray when visited.
-              toNode.setGray();
-              queue.enqueue(toNode, toNode.getDistancetoNode());
-            } else if (toNode.isGray()) {
-              // If was already visited, decrease its priority in queue.
-              queue.updatePriority(toNode, toNode.getDistancetoNode());
-            }
-          }
-        }
+        relaxation.fromNode = dijkstraNode;
+        graph.forEachRelationship(dijkstraNode.getNodeId(), relaxation);
+        relaxation.prefetchDiscovered(graph);
         // After going through all relationships, mark node as black.
         dijkstraNode.setBlack();
         if (targetIds.contains(dijkstraNode.getNodeId())) {
@@ -97,4 +72,55 @@ public class OneToManyDijkstra {
     System.out.println("Queue size: " + queue.size());
     System.out.println("Visited nodes: " + dijkstraNodeMap.size());
   }
+
+  /**
+   * Relaxes relationships leaving the node being expanded. A single instance is reused for the whole search.
+   */
+  private static class Relaxation implements RelationshipConsumer {
+    private final DijkstraQueue queue;
+    private final Map<Integer, DijkstraNode> dijkstraNodeMap;
+    private DijkstraNode fromNode;
+    // Nodes that became gray while relaxing the current node.
+    private int[] discovered = new int[16];
+    private int discoveredCount;
+
+    Relaxation(DijkstraQueue queue, Map<Integer, DijkstraNode> dijkstraNodeMap) {
+      this.queue = queue;
+      this.dijkstraNodeMap = dijkstraNodeMap;
+    }
+
+    /* Lets the graph load relationships of discovered nodes together, before they are expanded one by one. */
+    void prefetchDiscovered(Graph graph) {
+      if (discoveredCount > 0) {
+        graph.prefetch(discovered, discoveredCount);
+        discoveredCount = 0;
+      }
+    }
+
+    @Override
+    public void accept(int endNodeId, double cost) {
+      // Neighbor is only tracked by id, its relationships are loaded when it is expanded.
+      DijkstraNode toNode = dijkstraNodeMap.get(endNodeId);
+      if (toNode == null) {
+        toNode = new DijkstraNode(endNodeId);
+        dijkstraNodeMap.put(endNodeId, toNode);
+      }
+      double newDistance = fromNode.getDistancetoNode() + cost;
+      if (toNode.isWhite() || newDistance < toNode.getDistancetoNode()) {
+        toNode.setDistancetoNode(newDistance);
+        if (toNode.isWhite()) {
+          // White becomes gray when visited.
+          toNode.setGray();
+          queue.enqueue(toNode, toNode.getDistancetoNode());
+          if (discoveredCount == discovered.length) {
+            discovered = Arrays.copyOf(discovered, discoveredCount * 2);
+          }
+          discovered[discoveredCount++] = endNodeId;
+        } else if (toNode.isGray()) {
+          // If was already visited, decrease its priority in queue.
+          queue.updatePriority(toNode, toNode.getDistancetoNode());
+        }
+      }
+    }
+  }
 }
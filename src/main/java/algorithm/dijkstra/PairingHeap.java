@@ -0,0 +1,181 @@
+package algorithm.dijkstra;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A priority queue backed by a pairing heap, with the same handle based interface as FibonacciHeap.
+ *
+ * The heap is a single tree stored as leftmost child / next sibling pointers. Insert, meld and decrease-key
+ * are O(1) (decrease-key cuts the subtree and melds it with the root) and dequeueMin is amortized O(lg n),
+ * using the standard two pass combine of the root children. It is usually faster than a Fibonacci heap in
+ * practice because it does far less pointer bookkeeping per operation.
+ *
+ * @param <T> The type of elements to store in the heap.
+ */
+public final class PairingHeap<T> {
+
+  /**
+   * Handle to an element in the heap, needed to decrease its priority.
+   */
+  public static final class Entry<T> {
+    private T value;
+    private double priority;
+
+    private Entry<T> child;  // Leftmost child, if any.
+    private Entry<T> next;   // Next sibling, if any.
+    private Entry<T> prev;   // Previous sibling, or parent for the leftmost child.
+
+    private Entry(T value, double priority) {
+      this.value = value;
+      this.priority = priority;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    public double getPriority() {
+      return priority;
+    }
+  }
+
+  private Entry<T> root;
+  private int size;
+
+  // Reused by dequeueMin to combine the children of the removed root.
+  @SuppressWarnings("unchecked")
+  private Entry<T>[] siblings = (Entry<T>[]) new Entry<?>[16];
+
+  /**
+   * Inserts the element with the given priority and returns its handle.
+   */
+  public Entry<T> enqueue(T value, double priority) {
+    checkPriority(priority);
+    Entry<T> entry = new Entry<>(value, priority);
+    root = meld(root, entry);
+    size++;
+    return entry;
+  }
+
+  /**
+   * Returns the entry with minimum priority, throwing a NoSuchElementException if the heap is empty.
+   */
+  public Entry<T> min() {
+    if (isEmpty()) {
+      throw new NoSuchElementException("Heap is empty.");
+    }
+    return root;
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes and returns the entry with minimum priority, throwing a NoSuchElementException if the heap is empty.
+   */
+  public Entry<T> dequeueMin() {
+    Entry<T> min = min();
+    root = combineSiblings(min.child);
+    min.child = null;
+    size--;
+    return min;
+  }
+
+  /**
+   * Decreases priority of an entry that is in this heap. It is assumed that the entry belongs in this heap.
+   *
+   * @throws IllegalArgumentException If the new priority exceeds the old priority or is not a valid double.
+   */
+  public void decreaseKey(Entry<T> entry, double newPriority) {
+    checkPriority(newPriority);
+    if (newPriority > entry.priority) {
+      throw new IllegalArgumentException("New priority exceeds old.");
+    }
+    entry.priority = newPriority;
+    if (entry == root) {
+      return;
+    }
+    // Cut the subtree rooted at the entry and meld it back with the root.
+    if (entry.next != null) {
+      entry.next.prev = entry.prev;
+    }
+    if (entry.prev.child == entry) {
+      entry.prev.child = entry.next;
+    } else {
+      entry.prev.next = entry.next;
+    }
+    entry.next = null;
+    entry.prev = null;
+    root = meld(root, entry);
+  }
+
+  /**
+   * Links two trees whose roots have no siblings, the root with larger priority becomes leftmost child of the other.
+   */
+  private Entry<T> meld(Entry<T> one, Entry<T> two) {
+    if (one == null) {
+      return two;
+    }
+    if (two == null) {
+      return one;
+    }
+    if (two.priority < one.priority) {
+      Entry<T> aux = one;
+      one = two;
+      two = aux;
+    }
+    two.prev = one;
+    two.next = one.child;
+    if (one.child != null) {
+      one.child.prev = two;
+    }
+    one.child = two;
+    return one;
+  }
+
+  /**
+   * Two pass combine: melds siblings in pairs from left to right, then melds the pairs from right to left.
+   */
+  private Entry<T> combineSiblings(Entry<T> first) {
+    if (first == null) {
+      return null;
+    }
+    int count = 0;
+    for (Entry<T> entry = first; entry != null; ) {
+      Entry<T> next = entry.next;
+      entry.next = null;
+      entry.prev = null;
+      if (count == siblings.length) {
+        siblings = Arrays.copyOf(siblings, count * 2);
+      }
+      siblings[count++] = entry;
+      entry = next;
+    }
+    int pairs = 0;
+    for (int i = 0; i + 1 < count; i += 2) {
+      siblings[pairs++] = meld(siblings[i], siblings[i + 1]);
+    }
+    if (count % 2 == 1) {
+      siblings[pairs++] = siblings[count - 1];
+    }
+    Entry<T> result = siblings[pairs - 1];
+    for (int i = pairs - 2; i >= 0; i--) {
+      result = meld(siblings[i], result);
+    }
+    // Do not keep removed entries reachable.
+    Arrays.fill(siblings, 0, count, null);
+    return result;
+  }
+
+  private void checkPriority(double priority) {
+    if (Double.isNaN(priority)) {
+      throw new IllegalArgumentException(priority + " is invalid.");
+    }
+  }
+}
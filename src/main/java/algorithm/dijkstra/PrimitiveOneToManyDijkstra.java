@@ -0,0 +1,161 @@
+package algorithm.dijkstra;
+
+import instrumentation.ObjectSizeFetcher;
+import model.dijkstra.DijkstraState;
+import model.graph.Graph;
+import model.graph.RelationshipConsumer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Solution for one to many dijkstra algorithm keeping all search state in primitive arrays.
+ * No object is created per visited node, distances and colors live in DijkstraState and the queue is an IndexedHeap.
+ */
+public class PrimitiveOneToManyDijkstra {
+
+  public static double[] findShortestPaths(Graph graph, int sourceId, List<Integer> targetIds)
+      throws DijkstraOutOfMemoryError {
+    return findShortestPaths(graph, sourceId, targetIds, new DijkstraState(graph.getNodeCount()), new IndexedHeap());
+  }
+
+  /**
+   * Same as above, reusing state and queue from a previous search to avoid allocating them again.
+   */
+  public static double[] findShortestPaths(
+      Graph graph, int sourceId, List<Integer> targetIds, DijkstraState state, IndexedHeap queue)
+      throws DijkstraOutOfMemoryError {
+    state.reset();
+    queue.clear();
+
+    // Number of targets remaining to have distance found.
+    int remainingTargetsIds = targetIds.size();
+    int[] targets = new int[targetIds.size()];
+    for (int i = 0; i < targets.length; i++) {
+      targets[i] = targetIds.get(i);
+    }
+
+    try {
+      // Origin is visited and becomes gray.
+      int startIndex = state.indexOf(sourceId);
+      state.setGray(startIndex);
+      state.setDistance(startIndex, 0.0);
+      queue.enqueue(startIndex, 0.0);
+
+      Relaxation relaxation = new Relaxation(state, queue);
+      while (!queue.isEmpty() && remainingTargetsIds != 0) {
+        int index = queue.extractMin();
+        int nodeId = state.getNodeId(index);
+        relaxation.fromDistance = state.getDistance(index);
+        graph.forEachRelationship(nodeId, relaxation);
+        relaxation.prefetchDiscovered(graph);
+        // After going through all relationships, mark node as black.
+        state.setBlack(index);
+        for (int target : targets) {
+          if (target == nodeId) {
+            System.out.println(String.format("Dijkstra remaining targets: %s", --remainingTargetsIds));
+            break;
+          }
+        }
+      }
+
+      double[] shortestPaths = new double[targets.length];
+      for (int i = 0; i < targets.length; i++) {
+        int index = state.findIndex(targets[i]);
+        if (index >= 0) {
+          shortestPaths[i] = state.getDistance(index);
+        } else {
+          throw new IllegalArgumentException("Missing routes, not all nodes are connectable.");
+        }
+      }
+      printMemoryUsage(graph, queue, state);
+      return shortestPaths;
+    } catch (OutOfMemoryError e) {
+      printMemoryUsage(graph, queue, state);
+      throw new DijkstraOutOfMemoryError(
+          ObjectSizeFetcher.getObjectFootprint(queue), ObjectSizeFetcher.getObjectFootprint(state));
+    }
+  }
+
+  /**
+   * Distances from the source to nodes 0 to nodeCount - 1, infinite for nodes not reached. Searches the whole graph
+   * with dense arrays, for preprocessing that needs the distances to every node.
+   */
+  public static double[] findAllShortestPaths(Graph graph, int nodeCount, int sourceId) {
+    double[] distances = new double[nodeCount];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    boolean[] settled = new boolean[nodeCount];
+    IndexedHeap queue = new IndexedHeap();
+    distances[sourceId] = 0.0;
+    queue.enqueue(sourceId, 0.0);
+    while (!queue.isEmpty()) {
+      int nodeId = queue.extractMin();
+      settled[nodeId] = true;
+      double fromDistance = distances[nodeId];
+      graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+        double distance = fromDistance + cost;
+        if (settled[endNodeId] || distance >= distances[endNodeId]) {
+          return;
+        }
+        if (queue.contains(endNodeId)) {
+          queue.decreasePriority(endNodeId, distance);
+        } else {
+          queue.enqueue(endNodeId, distance);
+        }
+        distances[endNodeId] = distance;
+      });
+    }
+    return distances;
+  }
+
+  private static void printMemoryUsage(Graph graph, IndexedHeap queue, DijkstraState state) {
+    System.out.println("Graph cache size: " + graph.getCacheSize());
+    System.out.println("Queue size: " + queue.size());
+    System.out.println("Visited nodes: " + state.getVisitedCount());
+  }
+
+  /**
+   * Relaxes relationships leaving the node being expanded. A single instance is reused for the whole search.
+   */
+  private static class Relaxation implements RelationshipConsumer {
+    private final DijkstraState state;
+    private final IndexedHeap queue;
+    private double fromDistance;
+    // Nodes that became gray while relaxing the current node.
+    private int[] discovered = new int[16];
+    private int discoveredCount;
+
+    Relaxation(DijkstraState state, IndexedHeap queue) {
+      this.state = state;
+      this.queue = queue;
+    }
+
+    /* Lets the graph load relationships of discovered nodes together, before they are expanded one by one. */
+    void prefetchDiscovered(Graph graph) {
+      if (discoveredCount > 0) {
+        graph.prefetch(discovered, discoveredCount);
+        discoveredCount = 0;
+      }
+    }
+
+    @Override
+    public void accept(int endNodeId, double cost) {
+      int index = state.indexOf(endNodeId);
+      double newDistance = fromDistance + cost;
+      if (state.isWhite(index)) {
+        // White becomes gray when visited.
+        state.setGray(index);
+        state.setDistance(index, newDistance);
+        queue.enqueue(index, newDistance);
+        if (discoveredCount == discovered.length) {
+          discovered = Arrays.copyOf(discovered, discoveredCount * 2);
+        }
+        discovered[discoveredCount++] = endNodeId;
+      } else if (state.isGray(index) && newDistance < state.getDistance(index)) {
+        // If was already visited, decrease its priority in queue.
+        state.setDistance(index, newDistance);
+        queue.decreasePriority(index, newDistance);
+      }
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package algorithm.dijkstra;
+
+import java.util.Arrays;
+
+/**
+ * Monotone radix heap of int elements with non negative long keys, kept in primitive arrays.
+ *
+ * Elements are kept in 65 buckets by the highest bit in which their key differs from the last extracted key,
+ * so keys are never compared until a bucket is emptied into the lower ones. This only works if no key lower than
+ * the last extracted one is ever inserted, which holds for Dijkstra with non negative costs.
+ * Every element remembers its bucket and slot, so decrease key moves it between buckets in O(1).
+ */
+public class RadixHeap {
+  private static final int BUCKETS = Long.SIZE + 1;
+  private static final int INITIAL_CAPACITY = 1 << 4;
+
+  private final int[][] buckets = new int[BUCKETS][];
+  private final int[] bucketSizes = new int[BUCKETS];
+
+  // Key, bucket and slot in bucket indexed by element, bucket is -1 when element is not queued.
+  private long[] keys = new long[0];
+  private int[] bucketOf = new int[0];
+  private int[] slotOf = new int[0];
+
+  private long lastKey;
+  private int size;
+
+  public RadixHeap() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new int[INITIAL_CAPACITY];
+    }
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(int element) {
+    return element < bucketOf.length && bucketOf[element] >= 0;
+  }
+
+  public void enqueue(int element, long key) {
+    checkKey(key);
+    if (element >= bucketOf.length) {
+      int oldLength = bucketOf.length;
+      int newLength = Math.max(element + 1, oldLength + (oldLength >> 1));
+      keys = Arrays.copyOf(keys, newLength);
+      bucketOf = Arrays.copyOf(bucketOf, newLength);
+      slotOf = Arrays.copyOf(slotOf, newLength);
+      Arrays.fill(bucketOf, oldLength, newLength, -1);
+    }
+    keys[element] = key;
+    add(bucketFor(key), element);
+    size++;
+  }
+
+  /* Decreases key of an element already in the heap. */
+  public void decreaseKey(int element, long key) {
+    checkKey(key);
+    remove(element);
+    keys[element] = key;
+    add(bucketFor(key), element);
+  }
+
+  public int extractMin() {
+    if (bucketSizes[0] == 0) {
+      // Find first non empty bucket, its minimum becomes the last key and its elements move to lower buckets.
+      int bucket = 1;
+      while (bucketSizes[bucket] == 0) {
+        bucket++;
+      }
+      int[] elements = buckets[bucket];
+      int count = bucketSizes[bucket];
+      long min = keys[elements[0]];
+      for (int i = 1; i < count; i++) {
+        min = Math.min(min, keys[elements[i]]);
+      }
+      lastKey = min;
+      bucketSizes[bucket] = 0;
+      for (int i = 0; i < count; i++) {
+        add(bucketFor(keys[elements[i]]), elements[i]);
+      }
+    }
+    int element = buckets[0][--bucketSizes[0]];
+    bucketOf[element] = -1;
+    size--;
+    return element;
+  }
+
+  public long getKey(int element) {
+    return keys[element];
+  }
+
+  /* Removes all elements, keeping allocated arrays. */
+  public void clear() {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      for (int i = 0; i < bucketSizes[bucket]; i++) {
+        bucketOf[buckets[bucket][i]] = -1;
+      }
+      bucketSizes[bucket] = 0;
+    }
+    lastKey = 0;
+    size = 0;
+  }
+
+  private int bucketFor(long key) {
+    return key == lastKey ? 0 : Long.SIZE - Long.numberOfLeadingZeros(key ^ lastKey);
+  }
+
+  private void add(int bucket, int element) {
+    if (bucketSizes[bucket] == buckets[bucket].length) {
+      buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketSizes[bucket] * 2);
+    }
+    int slot = bucketSizes[bucket]++;
+    buckets[bucket][slot] = element;
+    bucketOf[element] = bucket;
+    slotOf[element] = slot;
+  }
+
+  private void remove(int element) {
+    // Last element of the bucket takes the slot of the removed one.
+    int bucket = bucketOf[element];
+    int slot = slotOf[element];
+    int last = buckets[bucket][--bucketSizes[bucket]];
+    buckets[bucket][slot] = last;
+    slotOf[last] = slot;
+    bucketOf[element] = -1;
+  }
+
+  private void checkKey(long key) {
+    if (key < lastKey) {
+      throw new IllegalArgumentException(
+          String.format("Radix heap keys must not decrease below last extracted key %s, got %s.", lastKey, key));
+    }
+  }
+}
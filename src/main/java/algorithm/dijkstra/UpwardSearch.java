@@ -0,0 +1,92 @@
+package algorithm.dijkstra;
+
+import model.dijkstra.DijkstraState;
+import model.graph.CompressedGraph;
+import model.graph.RelationshipConsumer;
+
+/**
+ * Dijkstra on one graph of a ContractionHierarchy, only going up, with stall on demand: a node reached by an upward
+ * path can often be reached shorter through a higher ranked node, by going up and back down. Before expanding a
+ * node, the relationships arriving from higher ranked nodes are checked, and the node is not expanded when one of
+ * them gives a shorter distance, which prunes most of the upward search.
+ *
+ * Used by ContractionHierarchyQuery, settling one node at a time on each side, and by
+ * ContractionHierarchyManyToMany, settling every node. State and queue are reused by following searches, so an
+ * instance must only be used by one thread.
+ */
+class UpwardSearch implements RelationshipConsumer {
+  final DijkstraState state;
+  final IndexedHeap queue = new IndexedHeap();
+  private final CompressedGraph graph;
+  // Relationships arriving from higher ranked nodes, used to stall.
+  private final CompressedGraph stallGraph;
+  private final RelationshipConsumer stallCheck;
+  private double fromDistance;
+  private boolean stalled;
+
+  UpwardSearch(int nodeCount, CompressedGraph graph, CompressedGraph stallGraph) {
+    this.state = new DijkstraState(nodeCount);
+    this.graph = graph;
+    this.stallGraph = stallGraph;
+    // Stalls the node being expanded when a higher ranked node already reached gives it a shorter distance.
+    this.stallCheck = (higherNodeId, cost) -> {
+      int higherIndex = state.findIndex(higherNodeId);
+      if (higherIndex >= 0 && state.getDistance(higherIndex) + cost < fromDistance) {
+        stalled = true;
+      }
+    };
+  }
+
+  void start(int nodeId) {
+    state.reset();
+    queue.clear();
+    int index = state.indexOf(nodeId);
+    state.setGray(index);
+    state.setDistance(index, 0.0);
+    queue.enqueue(index, 0.0);
+  }
+
+  /**
+   * Settles the queued node with the smallest distance and expands it unless it is stalled. Returns its id, or -1
+   * when it was stalled.
+   */
+  int settleNext() {
+    int index = queue.extractMin();
+    int nodeId = state.getNodeId(index);
+    fromDistance = state.getDistance(index);
+    state.setBlack(index);
+    stalled = false;
+    stallGraph.forEachRelationship(nodeId, stallCheck);
+    if (stalled) {
+      return -1;
+    }
+    graph.forEachRelationship(nodeId, this);
+    return nodeId;
+  }
+
+  /* Distance of the node settled last. */
+  double getSettledDistance() {
+    return fromDistance;
+  }
+
+  /* Called when a relaxation gives the node a shorter distance. */
+  void reached(int nodeId, double distance) {
+  }
+
+  @Override
+  public void accept(int endNodeId, double cost) {
+    int index = state.indexOf(endNodeId);
+    double newDistance = fromDistance + cost;
+    if (state.isWhite(index)) {
+      state.setGray(index);
+      state.setDistance(index, newDistance);
+      queue.enqueue(index, newDistance);
+    } else if (state.isGray(index) && newDistance < state.getDistance(index)) {
+      state.setDistance(index, newDistance);
+      queue.decreasePriority(index, newDistance);
+    } else {
+      return;
+    }
+    reached(endNodeId, newDistance);
+  }
+}
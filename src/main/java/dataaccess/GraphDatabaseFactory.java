@@ -1,6 +1,9 @@
 package dataaccess;
 
 import model.graph.Graph;
+import model.graph.PrefetchingGraph;
+
+import java.util.List;
 
 /**
  * Returns graph implementation to use based on database.
@@ -11,16 +14,39 @@ public class GraphDatabaseFactory {
     POSTGRES,
     NEO4J,
     NEO4J_EMBEDDED,
+    MMAP_FILE,
   }
 
   public static Graph create(DatabaseType type, Graph.AccessMode accessMode, Graph.Country graphCountry) {
+    return create(type, accessMode, graphCountry, null);
+  }
+
+  /**
+   * Input node ids are needed when accessMode is REGION, to choose the region to load.
+   *
+   * Graphs loading nodes on demand are wrapped in a PrefetchingGraph when -Dgraph.prefetch.threads is set. The
+   * wrapper is not a PushdownGraph, so prefetching must stay off for the PUSHDOWN engine.
+   */
+  public static Graph create(
+      DatabaseType type, Graph.AccessMode accessMode, Graph.Country graphCountry, List<Integer> inputNodeIds) {
+    Graph graph = createGraph(type, accessMode, graphCountry, inputNodeIds);
+    if (PrefetchingGraph.THREADS > 0 && accessMode != Graph.AccessMode.ALL) {
+      return new PrefetchingGraph(graph);
+    }
+    return graph;
+  }
+
+  private static Graph createGraph(
+      DatabaseType type, Graph.AccessMode accessMode, Graph.Country graphCountry, List<Integer> inputNodeIds) {
     switch (type) {
       case POSTGRES:
-        return new PostgresGraph(accessMode, graphCountry);
+        return new PostgresGraph(accessMode, graphCountry, inputNodeIds);
       case NEO4J:
-        return new Neo4jGraph(accessMode, graphCountry);
+        return new Neo4jGraph(accessMode, graphCountry, inputNodeIds);
       case NEO4J_EMBEDDED:
-        return new Neo4jGraphEmbedded(accessMode, graphCountry);
+        return new Neo4jGraphEmbedded(accessMode, graphCountry, inputNodeIds);
+      case MMAP_FILE:
+        return new MappedGraph(accessMode, graphCountry);
       default:
         throw new IllegalArgumentException("Unsupported database type");
     }
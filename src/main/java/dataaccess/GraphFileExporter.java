@@ -0,0 +1,115 @@
+package dataaccess;
+
+import common.Timer;
+import model.graph.Graph;
+import model.graph.RelationshipConsumer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the relationships of any graph implementation to the binary file read by MappedGraph.
+ */
+public class GraphFileExporter {
+  // Nodes hinted to the graph at once before they are visited, so graphs loading on demand fetch them in batches.
+  private static final int PREFETCH_BATCH_SIZE = 1024;
+
+  /**
+   * Exports relationships of nodes 0 to nodeCount - 1.
+   * Targets and costs are streamed to temporary files while offsets are counted, so only offsets are kept in memory.
+   * Relationships are visited without creating Node objects, and each range of PREFETCH_BATCH_SIZE ids is
+   * prefetched before it is visited.
+   */
+  public static void export(Graph graph, int nodeCount, File graphFile) {
+    Timer exportTimer = new Timer();
+    exportTimer.startCounter();
+    int[] offsets = new int[nodeCount + 1];
+    File targetsFile = new File(graphFile.getPath() + ".targets.tmp");
+    File costsFile = new File(graphFile.getPath() + ".costs.tmp");
+    try {
+      try (DataOutputStream targets = openOutput(targetsFile); DataOutputStream costs = openOutput(costsFile)) {
+        RelationshipWriter writer = new RelationshipWriter(targets, costs);
+        int[] batch = new int[PREFETCH_BATCH_SIZE];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+          if (nodeId % PREFETCH_BATCH_SIZE == 0) {
+            int batchSize = Math.min(PREFETCH_BATCH_SIZE, nodeCount - nodeId);
+            for (int i = 0; i < batchSize; i++) {
+              batch[i] = nodeId + i;
+            }
+            graph.prefetch(batch, batchSize);
+          }
+          offsets[nodeId] = writer.relationshipCount;
+          graph.forEachRelationship(nodeId, writer);
+        }
+        offsets[nodeCount] = writer.relationshipCount;
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      try (DataOutputStream output = openOutput(graphFile)) {
+        output.writeInt(MappedGraph.MAGIC);
+        output.writeInt(MappedGraph.VERSION);
+        output.writeInt(nodeCount);
+        output.writeInt(offsets[nodeCount]);
+        for (int offset : offsets) {
+          output.writeInt(offset);
+        }
+        copy(targetsFile, output);
+        copy(costsFile, output);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error writing graph file: %s", graphFile), e);
+    } finally {
+      targetsFile.delete();
+      costsFile.delete();
+    }
+    System.out.println(String.format(
+        "Exported %s nodes and %s relationships to %s in: %ss",
+        nodeCount, offsets[nodeCount], graphFile, exportTimer.endCounter()));
+  }
+
+  /**
+   * Streams visited relationships to the targets and costs files, counting them.
+   */
+  private static class RelationshipWriter implements RelationshipConsumer {
+    private final DataOutputStream targets;
+    private final DataOutputStream costs;
+    private int relationshipCount;
+
+    RelationshipWriter(DataOutputStream targets, DataOutputStream costs) {
+      this.targets = targets;
+      this.costs = costs;
+    }
+
+    @Override
+    public void accept(int endNodeId, double cost) {
+      try {
+        targets.writeInt(endNodeId);
+        costs.writeDouble(cost);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      relationshipCount++;
+    }
+  }
+
+  private static DataOutputStream openOutput(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+  }
+
+  private static void copy(File file, DataOutputStream output) throws IOException {
+    byte[] buffer = new byte[1 << 16];
+    try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package dataaccess;
+
+import instrumentation.ObjectSizeFetcher;
+import model.graph.Graph;
+import model.graph.Node;
+import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Graph implementation that memory maps a binary graph file written by GraphFileExporter.
+ *
+ * File layout (big endian):
+ * int magic, int version, int nodeCount, int relationshipCount,
+ * int[nodeCount + 1] offsets, int[relationshipCount] targets, double[relationshipCount] costs.
+ *
+ * Nothing is copied to the heap, pages are loaded by the operating system when first read and are shared
+ * with any other process mapping the same file.
+ */
+public class MappedGraph implements Graph {
+  static final String GRAPH_FILE_TEMPLATE = "graph.%s.bin";
+  static final int MAGIC = 0x54535047;
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+  private final RandomAccessFile file;
+  private final IntBuffer offsets;
+  private final IntBuffer targets;
+  private final DoubleBuffer costs;
+  private final int nodeCount;
+  private final int relationshipCount;
+
+  /**
+   * Access mode does not change anything for a mapped file, the whole graph is always available.
+   */
+  public MappedGraph(AccessMode accessMode, Country graphCountry) {
+    this(getGraphFile(graphCountry));
+  }
+
+  public MappedGraph(File graphFile) {
+    try {
+      file = new RandomAccessFile(graphFile, "r");
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt() != MAGIC) {
+        throw new IllegalArgumentException(String.format("Not a graph file: %s", graphFile));
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException(
+            String.format("Unsupported graph file version %s in %s, expected %s.", version, graphFile, VERSION));
+      }
+      nodeCount = header.getInt();
+      relationshipCount = header.getInt();
+      long offsetsPosition = HEADER_BYTES;
+      long targetsPosition = offsetsPosition + (nodeCount + 1L) * Integer.BYTES;
+      long costsPosition = targetsPosition + (long) relationshipCount * Integer.BYTES;
+      offsets = map(channel, offsetsPosition, (nodeCount + 1L) * Integer.BYTES).asIntBuffer();
+      targets = map(channel, targetsPosition, (long) relationshipCount * Integer.BYTES).asIntBuffer();
+      costs = map(channel, costsPosition, (long) relationshipCount * Double.BYTES).asDoubleBuffer();
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error mapping graph file: %s", graphFile), e);
+    }
+  }
+
+  public static File getGraphFile(Country graphCountry) {
+    return new File(String.format(GRAPH_FILE_TEMPLATE, graphCountry.toString().toLowerCase()));
+  }
+
+  @Override
+  public Node getNode(int nodeId) {
+    List<Relationship> relationships = new ArrayList<>();
+    if (nodeId >= 0 && nodeId < nodeCount) {
+      int end = offsets.get(nodeId + 1);
+      for (int i = offsets.get(nodeId); i < end; i++) {
+        relationships.add(new Relationship(costs.get(i), targets.get(i)));
+      }
+    }
+    return new Node(nodeId, relationships);
+  }
+
+  @Override
+  public void forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (nodeId < 0 || nodeId >= nodeCount) {
+      return;
+    }
+    int end = offsets.get(nodeId + 1);
+    for (int i = offsets.get(nodeId); i < end; i++) {
+      consumer.accept(targets.get(i), costs.get(i));
+    }
+  }
+
+  @Override
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  @Override
+  public void prefetch(int[] nodeIds, int count) {
+    // All nodes are mapped, pages are loaded by the operating system.
+  }
+
+  @Override
+  public void close() {
+    // Mapped buffers are released by the garbage collector, only the file needs closing.
+    try {
+      file.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Error closing graph file.", e);
+    }
+  }
+
+  @Override
+  public String getCacheFootprint() {
+    return ObjectSizeFetcher.getObjectFootprint(this);
+  }
+
+  @Override
+  public int getCacheSize() {
+    return nodeCount + relationshipCount;
+  }
+
+  private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format("Graph file section too large to map: %s bytes", size));
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+  }
+}
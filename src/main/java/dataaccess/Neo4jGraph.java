@@ -2,9 +2,12 @@ package dataaccess;
 
 import common.Timer;
 import instrumentation.ObjectSizeFetcher;
+import model.graph.CompressedGraph;
 import model.graph.Graph;
 import model.graph.Node;
+import model.graph.PushdownGraph;
 import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 import model.graph.cache.GraphCache;
 import model.graph.cache.GraphCacheFactory;
 import org.neo4j.driver.v1.*;
@@ -15,33 +18,69 @@ import static org.neo4j.driver.v1.Values.parameters;
 
 /**
  * Graph implementation that retrieves data from Neo4j graph database.
+ * Searches can also run inside the database with the procedures of the neo4j-procedures module.
  */
-public class Neo4jGraph implements Graph {
+public class Neo4jGraph implements PushdownGraph {
+  // Prefetched nodes are sent in a batch once this many are pending.
+  private static final int PREFETCH_BATCH_SIZE = 64;
+  // Batches sent but not read yet, the oldest one is read before sending another one over this limit.
+  private static final int MAX_BATCHES_IN_FLIGHT = 4;
+
   private final Driver driver;
   private final GraphCache graphCache;
-  private final Session session;
+  // Sessions are not thread safe, so each thread gets its own one.
+  private final ThreadLocal<Session> session = ThreadLocal.withInitial(this::openSession);
+  private final List<Session> openSessions = Collections.synchronizedList(new ArrayList<>());
+  // Nodes hinted by prefetch and not sent yet.
+  private final ThreadLocal<List<Integer>> pendingIds = ThreadLocal.withInitial(ArrayList::new);
+  // Batches sent on the session of the thread, in the order their results arrive.
+  private final ThreadLocal<Deque<Batch>> batchesInFlight = ThreadLocal.withInitial(ArrayDeque::new);
+
+  // Only used when accessMode is ALL or REGION.
+  private CompressedGraph compressedGraph;
 
   private static double graphInMemoryRatio = 1;
 
   private int counter = 0;
 
   public Neo4jGraph(AccessMode accessMode, Country graphCountry) {
+    this(accessMode, graphCountry, null);
+  }
+
+  /**
+   * Input node ids are only used when accessMode is REGION, to choose the region to load.
+   */
+  public Neo4jGraph(AccessMode accessMode, Country graphCountry, List<Integer> inputNodeIds) {
     // As Neo4j database is already running at this point, we cannot change the graph size anymore.
     driver = GraphDatabase.driver("bolt://localhost", AuthTokens.basic("neo4j", "tcc2"));
-    session = driver.session();
     switch (accessMode) {
       case ALL:
-        graphCache = GraphCacheFactory.create(GraphCache.Type.FAST, false);
+        // Cache only keeps nodes missing from the compressed graph.
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
         // Load all nodes and relationships on graph.
         Timer graphLoaderTimer = new Timer();
         graphLoaderTimer.startCounter();
-        storeNodeAndRelationships(session.run(
-            "MATCH (s:Node) WITH s WHERE s.id < {limit} "
-                + "MATCH (s)-[e:EDGE]->(t:Node) WHERE s.id <> t.id RETURN DISTINCT s.id, e.cost, t.id "
-                + "ORDER BY s.id LIMIT {limit}",
-            parameters("limit", graphCountry.getRelationships() * graphInMemoryRatio)),
-            graphCountry);
-//        storeNodeAndRelationships(session.run(
+        if (PartitionedLoader.PARTITIONS > 1 && graphInMemoryRatio == 1) {
+          // Each range is loaded on the session of its own thread.
+          compressedGraph = PartitionedLoader.load(
+              graphCountry.getNodes(),
+              graphCountry.getRelationships(),
+              PartitionedLoader.PARTITIONS,
+              (fromId, toId, builder) -> loadRange(fromId, toId, graphCountry, builder));
+        } else {
+          CompressedGraph.Builder builder =
+              new CompressedGraph.Builder(graphCountry.getNodes(), graphCountry.getRelationships());
+          storeNodeAndRelationships(session.get().run(
+              "MATCH (s:Node) WITH s WHERE s.id < {limit} "
+                  + "MATCH (s)-[e:EDGE]->(t:Node) WHERE s.id <> t.id RETURN DISTINCT s.id, e.cost, t.id "
+                  + "ORDER BY s.id LIMIT {limit}",
+              parameters("limit", graphCountry.getRelationships() * graphInMemoryRatio)),
+              graphCountry,
+              builder);
+          // Partial loads keep the ids of missing nodes out, so on demand loads still find them.
+          compressedGraph = graphInMemoryRatio == 1 ? builder.build(graphCountry.getNodes()) : builder.build();
+        }
+//        storeNodeAndRelationships(session.get().run(
 //            "MATCH (s:Node)-[e:EDGE]->(t:Node) "
 //                + "WHERE s.id <> t.id "
 //                + "RETURN DISTINCT s.id, e.cost, t.id "
@@ -51,11 +90,16 @@ public class Neo4jGraph implements Graph {
 //            graphCountry);
         System.out.println(
             String.format("Loaded all nodes and relationships on graph in: %ss", graphLoaderTimer.endCounter()));
-        graphCache.limitCapacity();
         break;
       case ON_DEMAND:
         // No initial loading needed.
-        graphCache = GraphCacheFactory.create(GraphCache.Type.FAST, true);
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
+        break;
+      case REGION:
+        // Cache keeps nodes outside of the region, loaded on demand.
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
+        compressedGraph = PartitionedLoader.loadRegion(
+            graphCountry, inputNodeIds, (fromId, toId, builder) -> loadRange(fromId, toId, graphCountry, builder));
         break;
       default:
         throw new IllegalArgumentException(String.format("Unsupported access type for graph: %s", accessMode));
@@ -64,37 +108,182 @@ public class Neo4jGraph implements Graph {
 
   @Override
   public Node getNode(int nodeId) {
+    if (compressedGraph != null && compressedGraph.containsNode(nodeId)) {
+      return compressedGraph.getNode(nodeId);
+    }
     // Load node and relationships and return.
-    if (!graphCache.containsKey(nodeId)) {
-      storeNodeAndRelationshipsByDemand(
-          nodeId,
-          session.run(
-//              "CALL getNodeById({sourceId}) YIELD cost, target RETURN DISTINCT cost, target ORDER BY target",
-              "MATCH (s:Node {id: {sourceId}})-[e:EDGE]->(t:Node) "
-                  + "WHERE s.id <> t.id RETURN DISTINCT e.cost, t.id ORDER BY t.id",
-              parameters("sourceId", nodeId)));
-//              parameters("sourceId", String.valueOf(nodeId))));
-      counter++;
+    Node node = graphCache.containsKey(nodeId) ? graphCache.get(nodeId) : null;
+    return node != null ? node : retrieveNode(nodeId);
+  }
+
+  @Override
+  public void forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (compressedGraph != null && compressedGraph.containsNode(nodeId)) {
+      compressedGraph.forEachRelationship(nodeId, consumer);
+      return;
+    }
+    if (!graphCache.forEachRelationship(nodeId, consumer)) {
+      retrieveNode(nodeId).forEachRelationship(consumer);
     }
-    return graphCache.get(nodeId);
+  }
+
+  @Override
+  public int getNodeCount() {
+    // Only a full load holds every node, nodes after a partial load come on demand.
+    return compressedGraph != null && graphInMemoryRatio == 1 ? compressedGraph.getNodeCount() : -1;
+  }
+
+  /**
+   * Prefetched nodes are sent in batches without waiting for their results, so the database works on them
+   * while the search goes on. Results are read when a node is missing from cache.
+   */
+  @Override
+  public void prefetch(int[] nodeIds, int count) {
+    List<Integer> pending = pendingIds.get();
+    for (int i = 0; i < count; i++) {
+      if (compressedGraph == null || !compressedGraph.containsNode(nodeIds[i])) {
+        pending.add(nodeIds[i]);
+      }
+    }
+    if (pending.size() >= PREFETCH_BATCH_SIZE) {
+      Deque<Batch> batches = batchesInFlight.get();
+      if (batches.size() >= MAX_BATCHES_IN_FLIGHT) {
+        receiveBatch(batches.poll());
+      }
+      List<Integer> batchIds = takePendingIds(-1);
+      if (!batchIds.isEmpty()) {
+        batches.add(new Batch(batchIds, runBatch(batchIds)));
+      }
+    }
+  }
+
+  /**
+   * Runs procedure tcc2.oneToManyDijkstra, which must be deployed to the plugins folder of the server.
+   */
+  @Override
+  public double[] findShortestPaths(int sourceId, List<Integer> targetIds) {
+    List<Object> distances = session.get().run(
+        "CALL tcc2.oneToManyDijkstra({sourceId}, {targetIds}) YIELD distances RETURN distances",
+        parameters("sourceId", sourceId, "targetIds", targetIds))
+        .single().get("distances").asList();
+    double[] shortestPaths = new double[distances.size()];
+    for (int i = 0; i < shortestPaths.length; i++) {
+      shortestPaths[i] = ((Number) distances.get(i)).doubleValue();
+    }
+    return shortestPaths;
   }
 
   @Override
   public void close() {
-    session.close();
+    for (Session openSession : openSessions) {
+      openSession.close();
+    }
     driver.close();
   }
 
   @Override
   public String getCacheFootprint() {
+    if (compressedGraph != null) {
+      return compressedGraph.getCacheFootprint() + ObjectSizeFetcher.getObjectFootprint(graphCache);
+    }
     return ObjectSizeFetcher.getObjectFootprint(graphCache);
   }
 
   @Override
   public int getCacheSize() {
+    if (compressedGraph != null) {
+      return compressedGraph.getCacheSize() + graphCache.size();
+    }
     return graphCache.size();
   }
 
+  private Session openSession() {
+    Session newSession = driver.session();
+    openSessions.add(newSession);
+    return newSession;
+  }
+
+  /**
+   * Loads node from database and stores it in cache. The loaded node is returned, as another thread may evict it
+   * from the cache before it is read.
+   */
+  private Node retrieveNode(int nodeId) {
+    // Batches already sent may contain the node.
+    Deque<Batch> batches = batchesInFlight.get();
+    Node node = null;
+    while (!batches.isEmpty()) {
+      Node batchNode = receiveBatch(batches.poll(), nodeId);
+      node = batchNode != null ? batchNode : node;
+    }
+    if (node != null) {
+      return node;
+    }
+    if (!pendingIds.get().isEmpty()) {
+      // Pending nodes go in the same round trip.
+      List<Integer> batchIds = takePendingIds(nodeId);
+      return storeNodesAndRelationshipsByDemand(batchIds, nodeId, runBatch(batchIds));
+    }
+    node = storeNodeAndRelationshipsByDemand(
+        nodeId,
+        session.get().run(
+//            "CALL getNodeById({sourceId}) YIELD cost, target RETURN DISTINCT cost, target ORDER BY target",
+            "MATCH (s:Node {id: {sourceId}})-[e:EDGE]->(t:Node) "
+                + "WHERE s.id <> t.id RETURN DISTINCT e.cost, t.id ORDER BY t.id",
+            parameters("sourceId", nodeId)));
+//            parameters("sourceId", String.valueOf(nodeId))));
+    counter++;
+    return node;
+  }
+
+  /**
+   * Returns the given node id followed by pending ids not cached yet, clearing pending ids. No node id is added
+   * if it is -1.
+   */
+  private List<Integer> takePendingIds(int nodeId) {
+    List<Integer> pending = pendingIds.get();
+    List<Integer> batchIds = new ArrayList<>(pending.size() + 1);
+    if (nodeId != -1) {
+      batchIds.add(nodeId);
+    }
+    for (int pendingId : pending) {
+      if (pendingId != nodeId && !graphCache.contains(pendingId)) {
+        batchIds.add(pendingId);
+      }
+    }
+    pending.clear();
+    return batchIds;
+  }
+
+  /* Sends the batch query, results are only read when the returned result is consumed. */
+  private StatementResult runBatch(List<Integer> nodeIds) {
+    counter++;
+    return session.get().run(
+        "UNWIND {ids} AS id MATCH (s:Node {id: id})-[e:EDGE]->(t:Node) "
+            + "WHERE s.id <> t.id RETURN DISTINCT s.id, e.cost, t.id ORDER BY s.id, t.id",
+        parameters("ids", nodeIds));
+  }
+
+  private void receiveBatch(Batch batch) {
+    receiveBatch(batch, -1);
+  }
+
+  private Node receiveBatch(Batch batch, int requestedId) {
+    return storeNodesAndRelationshipsByDemand(batch.nodeIds, requestedId, batch.result);
+  }
+
+  /**
+   * Loads relationships with source ids in [fromId, toId) on the session of the calling thread.
+   */
+  private void loadRange(int fromId, int toId, Country graphCountry, CompressedGraph.Builder builder) {
+    storeNodeAndRelationships(session.get().run(
+        "MATCH (s:Node) WHERE s.id >= {fromId} AND s.id < {toId} "
+            + "MATCH (s)-[e:EDGE]->(t:Node) WHERE s.id <> t.id RETURN DISTINCT s.id, e.cost, t.id "
+            + "ORDER BY s.id",
+        parameters("fromId", fromId, "toId", toId)),
+        graphCountry,
+        builder);
+  }
+
   /**
    * Handles cypher query
    * MATCH (s:Node)-[e:EDGE]->(t:Node)
@@ -102,9 +291,10 @@ public class Neo4jGraph implements Graph {
    * RETURN DISTINCT s.id, e.cost, t.id
    * ORDER BY s.id
    */
-  private void storeNodeAndRelationships(StatementResult result, Country graphCountry) {
+  private void storeNodeAndRelationships(
+      StatementResult result, Country graphCountry, CompressedGraph.Builder builder) {
     while (result.hasNext()) {
-      if (graphInMemoryRatio != 1 && graphCache.size() >= graphCountry.getSize() * graphInMemoryRatio) {
+      if (graphInMemoryRatio != 1 && builder.size() >= graphCountry.getSize() * graphInMemoryRatio) {
         return;
       }
       List<Value> values = result.next().values();
@@ -113,12 +303,7 @@ public class Neo4jGraph implements Graph {
       double cost = values.get(1).asDouble();
       int targetId = values.get(2).asInt();
 //      int targetId = Integer.valueOf(values.get(2).asString());
-      Relationship relationship = new Relationship(cost, targetId);
-      if (!graphCache.containsKey(sourceId)) {
-        graphCache.put(new Node(sourceId, relationship));
-      } else {
-        graphCache.addRelationship(sourceId, relationship);
-      }
+      builder.addRelationship(sourceId, targetId, cost);
     }
   }
 
@@ -129,7 +314,7 @@ public class Neo4jGraph implements Graph {
    * RETURN DISTINCT e.cost, t.id
    * ORDER BY t.id
    */
-  private void storeNodeAndRelationshipsByDemand(int sourceId, StatementResult result) {
+  private Node storeNodeAndRelationshipsByDemand(int sourceId, StatementResult result) {
     List<Relationship> relationships = new ArrayList<>();
     while (result.hasNext()) {
       List<Value> values = result.next().values();
@@ -138,8 +323,52 @@ public class Neo4jGraph implements Graph {
 //      int targetId = Integer.valueOf(values.get(1).asString());
       relationships.add(new Relationship(cost, targetId));
     }
-    if (!graphCache.containsKey(sourceId)) {
-      graphCache.put(new Node(sourceId, relationships));
+    Node node = new Node(sourceId, relationships);
+    graphCache.put(node);
+    return node;
+  }
+
+  /**
+   * Handles cypher query
+   * UNWIND {ids} AS id
+   * MATCH (s:Node {id: id})-[e:EDGE]->(t:Node)
+   * WHERE s.id <> t.id
+   * RETURN DISTINCT s.id, e.cost, t.id
+   * ORDER BY s.id, t.id
+   * Returns the node for the requested id, or null if it was not in the batch.
+   */
+  private Node storeNodesAndRelationshipsByDemand(List<Integer> sourceIds, int requestedId, StatementResult result) {
+    Map<Integer, List<Relationship>> relationshipsBySource = new HashMap<>();
+    while (result.hasNext()) {
+      List<Value> values = result.next().values();
+      int sourceId = values.get(0).asInt();
+      double cost = values.get(1).asDouble();
+      int targetId = values.get(2).asInt();
+      relationshipsBySource.computeIfAbsent(sourceId, id -> new ArrayList<>()).add(new Relationship(cost, targetId));
+    }
+    // Nodes without relationships are cached too, so they are not queried again.
+    Node requestedNode = null;
+    for (int sourceId : sourceIds) {
+      List<Relationship> relationships = relationshipsBySource.get(sourceId);
+      Node node = new Node(sourceId, relationships != null ? relationships : new ArrayList<>());
+      graphCache.put(node);
+      if (sourceId == requestedId) {
+        requestedNode = node;
+      }
+    }
+    return requestedNode;
+  }
+
+  /**
+   * Batch query sent to the database whose result was not read yet.
+   */
+  private static class Batch {
+    private final List<Integer> nodeIds;
+    private final StatementResult result;
+
+    Batch(List<Integer> nodeIds, StatementResult result) {
+      this.nodeIds = nodeIds;
+      this.result = result;
     }
   }
 }
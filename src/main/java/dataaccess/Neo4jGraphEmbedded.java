@@ -1,15 +1,18 @@
 package dataaccess;
 
-import com.koloboke.collect.map.hash.HashIntLongMaps;
 import common.Timer;
 import instrumentation.ObjectSizeFetcher;
+import model.graph.CompressedGraph;
 import model.graph.Graph;
 import model.graph.Node;
 import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 import model.graph.cache.GraphCache;
 import model.graph.cache.GraphCacheFactory;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 
@@ -26,21 +29,32 @@ public class Neo4jGraphEmbedded implements Graph {
   private static final String DATABASE_TEMPLATE = "graph.%s.db";
   private static final String CONFIG_PATH =
       "C:/Users/Karla/Documents/ninha/tcc/neo4j/neo4j-enterprise-3.0.6/conf/neo4j.conf";
+  private static final Label NODE_LABEL = Label.label("Node");
   private static final String ID_PROPERTY = "id";
   private static final String COST_PROPERTY = "cost";
+  // Reads every node and relationship once on ON_DEMAND start to fill the database page cache, set with
+  // -Dneo4j.warmup=true.
+  private static final boolean WARM_UP = Boolean.getBoolean("neo4j.warmup");
 
   private final GraphCache graphCache;
   private final GraphDatabaseService graphDb;
+  // Internal ids of nodes, ids missing from it are looked up with the schema index on :Node(id).
+  private final NodeIdIndex nodeIdIndex;
 
-  // Only used when accessMode is ON_DEMAND.
-  private static Map<Integer, Long> nodeIdMap = HashIntLongMaps.newMutableMap();
-
-  // Only used when accessMode is ALL.
+  // Only used when accessMode is ALL or REGION.
   private static double graphInMemoryRatio = 0.05;
+  private CompressedGraph compressedGraph;
 
   private int counter = 0;
 
   public Neo4jGraphEmbedded(AccessMode accessMode, Country graphCountry) {
+    this(accessMode, graphCountry, null);
+  }
+
+  /**
+   * Input node ids are only used when accessMode is REGION, to choose the region to load.
+   */
+  public Neo4jGraphEmbedded(AccessMode accessMode, Country graphCountry, List<Integer> inputNodeIds) {
     String databaseName =
         DATABASE_PATH_PREFIX + String.format(DATABASE_TEMPLATE, graphCountry.toString().toLowerCase());
     graphDb = new org.neo4j.graphdb.factory.GraphDatabaseFactory()
@@ -49,51 +63,96 @@ public class Neo4jGraphEmbedded implements Graph {
         .setConfig(GraphDatabaseSettings.read_only, "true")
         .newGraphDatabase();
     registerShutdownHook(graphDb);
+    nodeIdIndex = NodeIdIndex.open(
+        graphDb,
+        ID_PROPERTY,
+        new File(String.format(NodeIdIndex.INDEX_FILE_TEMPLATE, graphCountry.toString().toLowerCase())),
+        graphCountry.getNodes());
     switch (accessMode) {
       case ALL:
-        graphCache = GraphCacheFactory.create(GraphCache.Type.FAST, false);
+        // Cache only keeps nodes missing from the compressed graph.
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
         // Load all nodes and relationships on graph.
         Timer graphLoaderTimer = new Timer();
         graphLoaderTimer.startCounter();
-        try (Transaction tx = graphDb.beginTx()) {
-          for (org.neo4j.graphdb.Node neo4jNode : graphDb.getAllNodes().stream().sorted(
-              (org.neo4j.graphdb.Node n1, org.neo4j.graphdb.Node n2) -> getId(n1) - getId(n2))
-              .collect(Collectors.toList())) {
-            nodeIdMap.put(getId(neo4jNode), neo4jNode.getId());
-            if (graphInMemoryRatio == 1 || graphCache.size() < graphCountry.getSize() * graphInMemoryRatio) {
-              storeNodeAndRelationships(neo4jNode);
-            } else {
-              for (org.neo4j.graphdb.Relationship neo4jRelationship : neo4jNode.getRelationships(Direction.OUTGOING)) {
-                neo4jRelationship.getPropertyKeys();
-                neo4jRelationship.getEndNode();
+        if (PartitionedLoader.PARTITIONS > 1 && graphInMemoryRatio == 1) {
+          // Each range is read in a transaction of its own thread.
+          compressedGraph = PartitionedLoader.load(
+              graphCountry.getNodes(),
+              graphCountry.getRelationships(),
+              PartitionedLoader.PARTITIONS,
+              this::loadRange);
+        } else {
+          CompressedGraph.Builder builder =
+              new CompressedGraph.Builder(graphCountry.getNodes(), graphCountry.getRelationships());
+          try (Transaction tx = graphDb.beginTx()) {
+            // Node ids are visited in order through the index, no sort of all nodes needed.
+            for (int nodeId = 0; nodeId < graphCountry.getNodes(); nodeId++) {
+              org.neo4j.graphdb.Node neo4jNode = findNode(nodeId);
+              if (neo4jNode == null) {
+                continue;
+              }
+              if (graphInMemoryRatio == 1 || builder.size() < graphCountry.getSize() * graphInMemoryRatio) {
+                for (Relationship relationship : retrieveNode(nodeId, neo4jNode).getRelationships()) {
+                  builder.addRelationship(nodeId, relationship.getEndNodeId(), relationship.getCost());
+                }
+              } else {
+                for (org.neo4j.graphdb.Relationship neo4jRelationship : neo4jNode.getRelationships(Direction.OUTGOING)) {
+                  neo4jRelationship.getPropertyKeys();
+                  neo4jRelationship.getEndNode();
+                }
               }
             }
+            tx.success();
           }
-          // Limit capacity after loading maximum ratio of graph.
-          if (graphCache.size() >= graphCountry.getSize() * graphInMemoryRatio) {
-            graphCache.limitCapacity();
-          }
-          tx.success();
+          // Partial loads keep the ids of missing nodes out, so on demand loads still find them.
+          compressedGraph = graphInMemoryRatio == 1 ? builder.build(graphCountry.getNodes()) : builder.build();
         }
         System.out.println(
             String.format("Loaded all nodes and relationships on graph in: %ss", graphLoaderTimer.endCounter()));
         break;
       case ON_DEMAND:
-        // No initial loading needed, but warm the database cache.
-        warmUp();
-        graphCache = GraphCacheFactory.create(GraphCache.Type.FAST, true);
+        // No initial loading needed, the database cache is only warmed when asked for.
+        if (WARM_UP) {
+          warmUp();
+        }
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
+        break;
+      case REGION:
+        // Cache keeps nodes outside of the region, loaded on demand.
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
+        // Each range is read in a transaction of its own thread.
+        compressedGraph = PartitionedLoader.loadRegion(graphCountry, inputNodeIds, this::loadRange);
         break;
       default:
         throw new IllegalArgumentException(String.format("Unsupported access type for graph: %s", accessMode));
     }
   }
 
+  /**
+   * Adds relationships of nodes with ids in [fromId, toId) to the builder. Transactions are bound to the calling
+   * thread, so ranges can be loaded in parallel.
+   */
+  private void loadRange(int fromId, int toId, CompressedGraph.Builder builder) {
+    try (Transaction tx = graphDb.beginTx()) {
+      for (int nodeId = fromId; nodeId < toId; nodeId++) {
+        org.neo4j.graphdb.Node neo4jNode = findNode(nodeId);
+        if (neo4jNode == null) {
+          continue;
+        }
+        for (Relationship relationship : retrieveNode(nodeId, neo4jNode).getRelationships()) {
+          builder.addRelationship(nodeId, relationship.getEndNodeId(), relationship.getCost());
+        }
+      }
+      tx.success();
+    }
+  }
+
   private void warmUp() {
     Timer warmUpTimer = new Timer();
     warmUpTimer.startCounter();
     try (Transaction tx = graphDb.beginTx()) {
       for (org.neo4j.graphdb.Node n : graphDb.getAllNodes()) {
-        nodeIdMap.put(getId(n), n.getId());
         for (org.neo4j.graphdb.Relationship relationship : n.getRelationships(Direction.OUTGOING)) {
           relationship.getPropertyKeys();
           relationship.getEndNode();
@@ -107,14 +166,34 @@ public class Neo4jGraphEmbedded implements Graph {
 
   @Override
   public Node getNode(int nodeId) {
+    if (compressedGraph != null && compressedGraph.containsNode(nodeId)) {
+      return compressedGraph.getNode(nodeId);
+    }
     // Load node and relationships and return.
-    if (!graphCache.containsKey(nodeId)) {
-      try (Transaction tx = graphDb.beginTx()) {
-        storeNodeAndRelationships(getNodeById(nodeId));
-        tx.success();
-      }
+    Node node = graphCache.containsKey(nodeId) ? graphCache.get(nodeId) : null;
+    return node != null ? node : loadNode(nodeId);
+  }
+
+  @Override
+  public void forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (compressedGraph != null && compressedGraph.containsNode(nodeId)) {
+      compressedGraph.forEachRelationship(nodeId, consumer);
+      return;
+    }
+    if (!graphCache.forEachRelationship(nodeId, consumer)) {
+      loadNode(nodeId).forEachRelationship(consumer);
     }
-    return graphCache.get(nodeId);
+  }
+
+  @Override
+  public int getNodeCount() {
+    // Only a full load holds every node, nodes after a partial load come on demand.
+    return compressedGraph != null && graphInMemoryRatio == 1 ? compressedGraph.getNodeCount() : -1;
+  }
+
+  @Override
+  public void prefetch(int[] nodeIds, int count) {
+    // Nodes are loaded one by one when visited.
   }
 
   @Override
@@ -124,23 +203,66 @@ public class Neo4jGraphEmbedded implements Graph {
 
   @Override
   public String getCacheFootprint() {
+    if (compressedGraph != null) {
+      return compressedGraph.getCacheFootprint() + ObjectSizeFetcher.getObjectFootprint(graphCache);
+    }
     return ObjectSizeFetcher.getObjectFootprint(graphCache);
   }
 
   @Override
   public int getCacheSize() {
+    if (compressedGraph != null) {
+      return compressedGraph.getCacheSize() + graphCache.size();
+    }
     return graphCache.size();
   }
 
-  private org.neo4j.graphdb.Node getNodeById(int nodeId) {
-    return graphDb.getNodeById(nodeIdMap.get(nodeId));
+  /**
+   * Loads node from database and stores it in cache. Transactions are bound to the calling thread, so this can be
+   * called from several threads at once.
+   */
+  private Node loadNode(int nodeId) {
+    try (Transaction tx = graphDb.beginTx()) {
+      org.neo4j.graphdb.Node neo4jNode = findNode(nodeId);
+      if (neo4jNode == null) {
+        throw new IllegalArgumentException(String.format("Node %s not found in database.", nodeId));
+      }
+      Node node = storeNodeAndRelationships(neo4jNode);
+      tx.success();
+      return node;
+    }
   }
 
-  private void storeNodeAndRelationships(org.neo4j.graphdb.Node neo4jNode) {
-    int nodeId = getId(neo4jNode);
-    if (!graphCache.containsKey(nodeId)) {
-      graphCache.put(retrieveNode(nodeId, neo4jNode));
+  /**
+   * Node with the given id, or null. Must be called inside a transaction.
+   *
+   * The index was built from every node of the database, so an id missing from it has no node. The database is
+   * only searched to confirm it, and a node found there, or an indexed node with another id, means the index is
+   * stale: it fails instead of looking up every node one by one.
+   */
+  private org.neo4j.graphdb.Node findNode(int nodeId) {
+    long neo4jNodeId = nodeIdIndex.get(nodeId);
+    if (neo4jNodeId == NodeIdIndex.MISSING) {
+      if (graphDb.findNode(NODE_LABEL, ID_PROPERTY, (long) nodeId) != null) {
+        throw nodeIdIndex.staleIndexError(nodeId);
+      }
+      return null;
     }
+    try {
+      org.neo4j.graphdb.Node neo4jNode = graphDb.getNodeById(neo4jNodeId);
+      if (getId(neo4jNode) != nodeId) {
+        throw nodeIdIndex.staleIndexError(nodeId);
+      }
+      return neo4jNode;
+    } catch (NotFoundException e) {
+      throw nodeIdIndex.staleIndexError(nodeId);
+    }
+  }
+
+  private Node storeNodeAndRelationships(org.neo4j.graphdb.Node neo4jNode) {
+    Node node = retrieveNode(getId(neo4jNode), neo4jNode);
+    graphCache.put(node);
+    return node;
   }
 
   private Node retrieveNode(int nodeId, org.neo4j.graphdb.Node neo4jNode) {
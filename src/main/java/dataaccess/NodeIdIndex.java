@@ -0,0 +1,170 @@
+package dataaccess;
+
+import common.Timer;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Maps node ids to internal Neo4j node ids, persisted to a file so only the first start scans every node.
+ *
+ * File layout (big endian):
+ * int magic, int version, int nodeCount, long[nodeCount] internal ids (MISSING for ids without a node).
+ *
+ * Internal ids are memory mapped, so the index takes no heap and only the pages of visited ids are read.
+ */
+class NodeIdIndex {
+  static final String INDEX_FILE_TEMPLATE = "graph.%s.ids";
+  static final int MAGIC = 0x54534944;
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 3 * Integer.BYTES;
+  static final long MISSING = -1;
+  // Number of ids checked against the database when opening an existing file.
+  private static final int SAMPLE_SIZE = 16;
+
+  private final File indexFile;
+  private final LongBuffer internalIds;
+  private final int nodeCount;
+
+  private NodeIdIndex(File indexFile, LongBuffer internalIds, int nodeCount) {
+    this.indexFile = indexFile;
+    this.internalIds = internalIds;
+    this.nodeCount = nodeCount;
+  }
+
+  /**
+   * Opens the index file, building it first when it is missing or does not match the database, as after a new
+   * import.
+   */
+  static NodeIdIndex open(GraphDatabaseService graphDb, String idProperty, File indexFile, int nodeCount) {
+    if (indexFile.exists()) {
+      if (matches(graphDb, idProperty, indexFile, nodeCount)) {
+        return read(indexFile);
+      }
+      System.out.println(String.format("Node id index %s does not match database, rebuilding it.", indexFile));
+    }
+    build(graphDb, idProperty, indexFile, nodeCount);
+    return read(indexFile);
+  }
+
+  /* Internal Neo4j id of the node, or MISSING. */
+  long get(int nodeId) {
+    if (nodeId < 0 || nodeId >= nodeCount) {
+      return MISSING;
+    }
+    return internalIds.get(nodeId);
+  }
+
+  /* Error for an index that no longer matches the database at the given node, so it gets rebuilt on next start. */
+  IllegalStateException staleIndexError(int nodeId) {
+    return new IllegalStateException(String.format(
+        "Node id index %s does not match database at node %s, delete it to rebuild it.", indexFile, nodeId));
+  }
+
+  private static NodeIdIndex read(File indexFile) {
+    // The mapping stays valid after the file is closed.
+    try (RandomAccessFile file = new RandomAccessFile(indexFile, "r")) {
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt() != MAGIC) {
+        throw new IllegalArgumentException(String.format("Not a node id index file: %s", indexFile));
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException(String.format(
+            "Unsupported node id index version %s in %s, expected %s.", version, indexFile, VERSION));
+      }
+      int nodeCount = header.getInt();
+      LongBuffer internalIds =
+          channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) nodeCount * Long.BYTES).asLongBuffer();
+      return new NodeIdIndex(indexFile, internalIds, nodeCount);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error reading node id index: %s", indexFile), e);
+    }
+  }
+
+  /**
+   * Scans every node once, without touching relationships, and writes their internal ids. Ids are collected on the
+   * heap, as nodes come in store order, and written under a temporary name so an interrupted build is not mistaken
+   * for an index.
+   */
+  private static void build(GraphDatabaseService graphDb, String idProperty, File indexFile, int nodeCount) {
+    Timer buildTimer = new Timer();
+    buildTimer.startCounter();
+    File temporaryFile = new File(indexFile.getPath() + ".tmp");
+    long[] internalIds = new long[nodeCount];
+    Arrays.fill(internalIds, MISSING);
+    try (Transaction tx = graphDb.beginTx()) {
+      for (org.neo4j.graphdb.Node neo4jNode : graphDb.getAllNodes()) {
+        long nodeId = (long) neo4jNode.getProperty(idProperty);
+        if (nodeId < 0 || nodeId >= nodeCount) {
+          throw new IllegalStateException(
+              String.format("Node id %s out of range, graph has %s nodes.", nodeId, nodeCount));
+        }
+        internalIds[(int) nodeId] = neo4jNode.getId();
+      }
+      tx.success();
+    }
+    try {
+      try (DataOutputStream output =
+               new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 1 << 16))) {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(nodeCount);
+        for (long internalId : internalIds) {
+          output.writeLong(internalId);
+        }
+      }
+      if (indexFile.exists() && !indexFile.delete()) {
+        throw new IOException(String.format("Could not replace %s", indexFile));
+      }
+      if (!temporaryFile.renameTo(indexFile)) {
+        throw new IOException(String.format("Could not rename %s to %s", temporaryFile, indexFile));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error writing node id index: %s", indexFile), e);
+    } finally {
+      temporaryFile.delete();
+    }
+    System.out.println(String.format(
+        "Built node id index %s for %s nodes in: %ss", indexFile, nodeCount, buildTimer.endCounter()));
+  }
+
+  /**
+   * Checks the header and evenly spaced ids against the database, which catches an index left from another import.
+   * The file is read without mapping it, as a mapped file cannot be replaced on Windows.
+   */
+  private static boolean matches(GraphDatabaseService graphDb, String idProperty, File indexFile, int nodeCount) {
+    try (RandomAccessFile file = new RandomAccessFile(indexFile, "r"); Transaction tx = graphDb.beginTx()) {
+      if (file.length() != HEADER_BYTES + (long) nodeCount * Long.BYTES
+          || file.readInt() != MAGIC || file.readInt() != VERSION || file.readInt() != nodeCount) {
+        return false;
+      }
+      int step = Math.max(1, nodeCount / SAMPLE_SIZE);
+      for (int nodeId = 0; nodeId < nodeCount; nodeId += step) {
+        file.seek(HEADER_BYTES + (long) nodeId * Long.BYTES);
+        long internalId = file.readLong();
+        if (internalId != MISSING && (long) graphDb.getNodeById(internalId).getProperty(idProperty) != nodeId) {
+          return false;
+        }
+      }
+      tx.success();
+      return true;
+    } catch (NotFoundException e) {
+      return false;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error reading node id index: %s", indexFile), e);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package dataaccess;
+
+import common.Timer;
+import model.graph.CompressedGraph;
+import model.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a graph in parallel, splitting node ids in ranges that are each loaded by their own thread and then
+ * merged in a single CompressedGraph.
+ */
+class PartitionedLoader {
+  // Number of ranges loaded in parallel, set with -Dgraph.load.partitions=8. 1 keeps the single query load.
+  static final int PARTITIONS = Integer.getInteger("graph.load.partitions", 1);
+
+  /**
+   * Loads relationships with source ids in [fromId, toId) into a builder. Called from several threads at once, so
+   * each call must use its own connection, session or transaction.
+   */
+  interface RangeLoader {
+    void load(int fromId, int toId, CompressedGraph.Builder builder) throws Exception;
+  }
+
+  /**
+   * Loads nodes 0 to nodeCount - 1, nodes without relationships included.
+   */
+  static CompressedGraph load(int nodeCount, int relationshipCount, int partitions, RangeLoader rangeLoader) {
+    int rangeSize = (nodeCount + partitions - 1) / partitions;
+    int rangeCount = (nodeCount + rangeSize - 1) / rangeSize;
+    int[] ranges = new int[2 * rangeCount];
+    for (int i = 0; i < rangeCount; i++) {
+      ranges[2 * i] = i * rangeSize;
+      ranges[2 * i + 1] = Math.min((i + 1) * rangeSize, nodeCount);
+    }
+    return CompressedGraph.merge(
+        loadRanges(ranges, nodeCount, relationshipCount, partitions, rangeLoader), nodeCount);
+  }
+
+  /**
+   * Loads the region chosen by the RegionIndex of the country for the given input nodes. Each range of the region is
+   * one query, run by up to PARTITIONS threads.
+   */
+  static CompressedGraph loadRegion(Graph.Country graphCountry, List<Integer> nodeIds, RangeLoader rangeLoader) {
+    if (nodeIds == null || nodeIds.isEmpty()) {
+      throw new IllegalArgumentException("Input node ids are needed to load a region.");
+    }
+    Timer regionLoaderTimer = new Timer();
+    regionLoaderTimer.startCounter();
+    int[] ranges = RegionIndex.read(RegionIndex.getRegionFile(graphCountry)).selectRanges(nodeIds);
+    int threads = Math.max(1, Math.min(PARTITIONS, ranges.length / 2));
+    CompressedGraph region = CompressedGraph.mergeRegion(
+        loadRanges(ranges, graphCountry.getNodes(), graphCountry.getRelationships(), threads, rangeLoader), ranges);
+    System.out.println(String.format(
+        "Loaded region of %s nodes and relationships in %s ranges in: %ss",
+        region.getCacheSize(), ranges.length / 2, regionLoaderTimer.endCounter()));
+    return region;
+  }
+
+  /* Loads each range in its own builder, sized from the average degree of the graph. */
+  private static List<CompressedGraph.Builder> loadRanges(
+      int[] ranges, int nodeCount, int relationshipCount, int threads, RangeLoader rangeLoader) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<CompressedGraph.Builder> builders = new ArrayList<>(ranges.length / 2);
+      List<Future<?>> loads = new ArrayList<>(ranges.length / 2);
+      for (int i = 0; i < ranges.length; i += 2) {
+        int fromId = ranges[i];
+        int toId = ranges[i + 1];
+        CompressedGraph.Builder builder = new CompressedGraph.Builder(
+            fromId, toId - fromId, (int) ((long) relationshipCount * (toId - fromId) / nodeCount));
+        builders.add(builder);
+        loads.add(executor.submit(() -> {
+          rangeLoader.load(fromId, toId, builder);
+          return null;
+        }));
+      }
+      for (Future<?> load : loads) {
+        load.get();
+      }
+      return builders;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading graph.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Error loading graph partition.", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
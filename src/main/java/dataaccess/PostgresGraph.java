@@ -2,29 +2,60 @@ package dataaccess;
 
 import common.Timer;
 import instrumentation.ObjectSizeFetcher;
+import model.graph.CompressedGraph;
 import model.graph.Graph;
 import model.graph.Node;
 import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 import model.graph.cache.GraphCache;
 import model.graph.cache.GraphCacheFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Graph implementation that retrieves data from PostgreSQL relational database.
  */
 public class PostgresGraph implements Graph {
   private static final String EDGES_TABLE_NAME_TEMPLATE = "edges_%s";
+  // Rows fetched per round trip when loading the whole graph, set with -Dpostgres.fetch.size=50000.
+  private static final int FETCH_SIZE = Integer.getInteger("postgres.fetch.size", 10_000);
+  // Maximum number of nodes waiting to be prefetched before they are loaded.
+  private static final int PREFETCH_BATCH_SIZE = 1000;
 
-  private final Connection connection;
+  // Each thread gets its own connection, so searches running in parallel do not share one.
+  private final ThreadLocal<Connection> connection = ThreadLocal.withInitial(this::openConnection);
+  private final List<Connection> openConnections = Collections.synchronizedList(new ArrayList<>());
+  // Statements are prepared once per connection and closed with it.
+  private final ThreadLocal<PreparedStatement> nodeStatement = ThreadLocal.withInitial(
+      () -> prepareStatement(
+          "SELECT DISTINCT target, cost FROM %s WHERE source = ? AND source != target ORDER BY target"));
+  private final ThreadLocal<PreparedStatement> nodesStatement = ThreadLocal.withInitial(
+      () -> prepareStatement(
+          "SELECT DISTINCT source, target, cost FROM %s WHERE source = ANY(?) AND source != target "
+              + "ORDER BY source, target"));
+  // Nodes hinted by prefetch, loaded together with the next node missing from cache.
+  private final ThreadLocal<List<Integer>> pendingIds = ThreadLocal.withInitial(ArrayList::new);
   private final GraphCache graphCache;
   private final String edgesTableName;
 
+  // Only used when accessMode is ALL or REGION.
+  private CompressedGraph compressedGraph;
+
   private static double graphInMemoryRatio = 1;
 
   public PostgresGraph(AccessMode accessMode, Country graphCountry) {
+    this(accessMode, graphCountry, null);
+  }
+
+  /**
+   * Input node ids are only used when accessMode is REGION, to choose the region to load.
+   */
+  public PostgresGraph(AccessMode accessMode, Country graphCountry, List<Integer> inputNodeIds) {
     edgesTableName = String.format(EDGES_TABLE_NAME_TEMPLATE, graphCountry.toString().toLowerCase());
 
     // Boilerplate code for creating JDBC connection.
@@ -33,41 +64,60 @@ public class PostgresGraph implements Graph {
     } catch (ClassNotFoundException e) {
       throw new IllegalStateException("Error loading PosgreSQL driver.", e);
     }
-    try {
-      connection = DriverManager.getConnection("jdbc:postgresql://localhost:5433/postgres", "postgres", "postgres");
-    } catch (SQLException e) {
-      throw new IllegalStateException("Error connecting to PosgreSQL database.", e);
-    }
 
     switch (accessMode) {
       case ALL:
-        graphCache = GraphCacheFactory.create(GraphCache.Type.FAST, false);
+        // Cache only keeps nodes missing from the compressed graph.
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
         // Load all nodes and relationships on graph.
         try {
           Timer graphLoaderTimer = new Timer();
           graphLoaderTimer.startCounter();
-          Statement statement = connection.createStatement();
-          storeNodeAndRelationships(statement.executeQuery(
-              String.format(
-                  "SELECT DISTINCT source, target, cost "
-                      + "FROM %s "
-                      + "WHERE source != target "
-                      + "ORDER BY source "
-                      + "LIMIT %s",
-                  edgesTableName, graphCountry.getRelationships() * graphInMemoryRatio)),
-              graphCountry);
-          statement.close();
+          if (PartitionedLoader.PARTITIONS > 1 && graphInMemoryRatio == 1) {
+            // Each range is loaded on the connection of its own thread.
+            compressedGraph = PartitionedLoader.load(
+                graphCountry.getNodes(),
+                graphCountry.getRelationships(),
+                PartitionedLoader.PARTITIONS,
+                (fromId, toId, builder) -> loadRange(fromId, toId, graphCountry, builder));
+          } else {
+            CompressedGraph.Builder builder =
+                new CompressedGraph.Builder(graphCountry.getNodes(), graphCountry.getRelationships());
+            Connection loadConnection = startStreaming();
+            Statement statement =
+                loadConnection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            storeNodeAndRelationships(statement.executeQuery(
+                String.format(
+                    "SELECT DISTINCT source, target, cost "
+                        + "FROM %s "
+                        + "WHERE source != target "
+                        + "ORDER BY source "
+                        + "LIMIT %s",
+                    edgesTableName, graphCountry.getRelationships() * graphInMemoryRatio)),
+                graphCountry,
+                builder);
+            statement.close();
+            endStreaming(loadConnection);
+            // Partial loads keep the ids of missing nodes out, so on demand loads still find them.
+            compressedGraph = graphInMemoryRatio == 1 ? builder.build(graphCountry.getNodes()) : builder.build();
+          }
           System.out.println(
               String.format("Loaded all nodes and relationships on graph in: %ss", graphLoaderTimer.endCounter()));
-          graphCache.limitCapacity();
         } catch (SQLException e) {
           throw new IllegalStateException("Error executing query in PosgreSQL database.", e);
         }
         break;
       case ON_DEMAND:
-        graphCache = GraphCacheFactory.create(GraphCache.Type.FAST, true);
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
         // No initial loading needed.
         break;
+      case REGION:
+        // Cache keeps nodes outside of the region, loaded on demand.
+        graphCache = GraphCacheFactory.createThreadSafe(GraphCacheFactory.DEFAULT_TYPE, true);
+        compressedGraph = PartitionedLoader.loadRegion(
+            graphCountry, inputNodeIds, (fromId, toId, builder) -> loadRange(fromId, toId, graphCountry, builder));
+        break;
       default:
         throw new IllegalArgumentException(String.format("Unsupported access type for graph: %s", accessMode));
     }
@@ -75,28 +125,54 @@ public class PostgresGraph implements Graph {
 
   @Override
   public Node getNode(int nodeId) {
+    if (compressedGraph != null && compressedGraph.containsNode(nodeId)) {
+      return compressedGraph.getNode(nodeId);
+    }
     // Load node and relationships and return.
-    if (!graphCache.containsKey(nodeId)) {
-      try {
-        Statement statement = connection.createStatement();
-        storeNodeAndRelationshipsByDemand(
-            nodeId,
-            statement.executeQuery(
-                String.format(
-                    "SELECT DISTINCT target, cost FROM %s WHERE source = %s AND source != target ORDER BY target",
-                    edgesTableName, nodeId)));
-        statement.close();
-      } catch (SQLException e) {
-        throw new IllegalStateException("Error executing query in PosgreSQL database.", e);
+    Node node = graphCache.containsKey(nodeId) ? graphCache.get(nodeId) : null;
+    return node != null ? node : retrieveNode(nodeId);
+  }
+
+  @Override
+  public void forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (compressedGraph != null && compressedGraph.containsNode(nodeId)) {
+      compressedGraph.forEachRelationship(nodeId, consumer);
+      return;
+    }
+    if (!graphCache.forEachRelationship(nodeId, consumer)) {
+      retrieveNode(nodeId).forEachRelationship(consumer);
+    }
+  }
+
+  @Override
+  public int getNodeCount() {
+    // Only a full load holds every node, nodes after a partial load come on demand.
+    return compressedGraph != null && graphInMemoryRatio == 1 ? compressedGraph.getNodeCount() : -1;
+  }
+
+  /**
+   * Prefetched nodes are not loaded right away. They wait until a node is missing from cache, and are loaded
+   * with it in the same query, so nodes discovered by several expansions share one round trip.
+   */
+  @Override
+  public void prefetch(int[] nodeIds, int count) {
+    List<Integer> pending = pendingIds.get();
+    for (int i = 0; i < count; i++) {
+      if (compressedGraph == null || !compressedGraph.containsNode(nodeIds[i])) {
+        pending.add(nodeIds[i]);
       }
     }
-    return graphCache.get(nodeId);
+    if (pending.size() >= PREFETCH_BATCH_SIZE) {
+      retrieveNodes(-1);
+    }
   }
 
   @Override
   public void close() {
     try {
-      connection.close();
+      for (Connection openConnection : openConnections) {
+        openConnection.close();
+      }
     } catch (SQLException e) {
       throw new IllegalStateException("Error closing connection to PosgreSQL database.", e);
     }
@@ -104,14 +180,120 @@ public class PostgresGraph implements Graph {
 
   @Override
   public String getCacheFootprint() {
+    if (compressedGraph != null) {
+      return compressedGraph.getCacheFootprint() + ObjectSizeFetcher.getObjectFootprint(graphCache);
+    }
     return ObjectSizeFetcher.getObjectFootprint(graphCache);
   }
 
   @Override
   public int getCacheSize() {
+    if (compressedGraph != null) {
+      return compressedGraph.getCacheSize() + graphCache.size();
+    }
     return graphCache.size();
   }
 
+  private Connection openConnection() {
+    try {
+      Connection newConnection =
+          DriverManager.getConnection("jdbc:postgresql://localhost:5433/postgres", "postgres", "postgres");
+      openConnections.add(newConnection);
+      return newConnection;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error connecting to PosgreSQL database.", e);
+    }
+  }
+
+  private PreparedStatement prepareStatement(String queryTemplate) {
+    try {
+      return connection.get().prepareStatement(String.format(queryTemplate, edgesTableName));
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error preparing query in PosgreSQL database.", e);
+    }
+  }
+
+  /**
+   * The driver only streams results through a cursor inside a transaction, otherwise all rows are buffered in
+   * memory before the first one is read.
+   */
+  private Connection startStreaming() throws SQLException {
+    Connection loadConnection = connection.get();
+    loadConnection.setAutoCommit(false);
+    return loadConnection;
+  }
+
+  private void endStreaming(Connection loadConnection) throws SQLException {
+    loadConnection.commit();
+    loadConnection.setAutoCommit(true);
+  }
+
+  /**
+   * Loads relationships with source ids in [fromId, toId), streamed on the connection of the calling thread.
+   */
+  private void loadRange(int fromId, int toId, Country graphCountry, CompressedGraph.Builder builder)
+      throws SQLException {
+    Connection loadConnection = startStreaming();
+    PreparedStatement statement = loadConnection.prepareStatement(
+        String.format(
+            "SELECT DISTINCT source, target, cost FROM %s "
+                + "WHERE source >= ? AND source < ? AND source != target ORDER BY source",
+            edgesTableName),
+        ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY);
+    statement.setFetchSize(FETCH_SIZE);
+    statement.setInt(1, fromId);
+    statement.setInt(2, toId);
+    storeNodeAndRelationships(statement.executeQuery(), graphCountry, builder);
+    statement.close();
+    endStreaming(loadConnection);
+  }
+
+  /**
+   * Loads node from database and stores it in cache. The loaded node is returned, as another thread may evict it
+   * from the cache before it is read.
+   */
+  private Node retrieveNode(int nodeId) {
+    if (!pendingIds.get().isEmpty()) {
+      return retrieveNodes(nodeId);
+    }
+    try {
+      PreparedStatement statement = nodeStatement.get();
+      statement.setInt(1, nodeId);
+      return storeNodeAndRelationshipsByDemand(nodeId, statement.executeQuery());
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error executing query in PosgreSQL database.", e);
+    }
+  }
+
+  /**
+   * Loads the given node and all pending prefetched nodes not cached yet in a single round trip, storing them in
+   * cache. Returns the given node, or null if the node id is -1.
+   */
+  private Node retrieveNodes(int nodeId) {
+    List<Integer> pending = pendingIds.get();
+    List<Integer> nodeIds = new ArrayList<>(pending.size() + 1);
+    if (nodeId != -1) {
+      nodeIds.add(nodeId);
+    }
+    for (int pendingId : pending) {
+      if (pendingId != nodeId && !graphCache.contains(pendingId)) {
+        nodeIds.add(pendingId);
+      }
+    }
+    pending.clear();
+    if (nodeIds.isEmpty()) {
+      return null;
+    }
+    try {
+      PreparedStatement statement = nodesStatement.get();
+      statement.setArray(1, connection.get().createArrayOf("integer", nodeIds.toArray()));
+      return storeNodesAndRelationshipsByDemand(nodeIds, nodeId, statement.executeQuery());
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error executing query in PosgreSQL database.", e);
+    }
+  }
+
   /**
    * Handles sql query
    * SELECT DISTINCT source, target, cost
@@ -119,22 +301,15 @@ public class PostgresGraph implements Graph {
    * WHERE source != target
    * ORDER BY source
    */
-  private void storeNodeAndRelationships(ResultSet resultSet, Country graphCountry) {
+  private void storeNodeAndRelationships(
+      ResultSet resultSet, Country graphCountry, CompressedGraph.Builder builder) {
     try {
       while (resultSet.next()) {
-        if (graphInMemoryRatio != 1 && graphCache.size() >= graphCountry.getSize() * graphInMemoryRatio) {
+        if (graphInMemoryRatio != 1 && builder.size() >= graphCountry.getSize() * graphInMemoryRatio) {
           resultSet.close();
           return;
         }
-        int sourceId = resultSet.getInt(1);
-        int targetId = resultSet.getInt(2);
-        double cost = resultSet.getDouble(3);
-        Relationship relationship = new Relationship(cost, targetId);
-        if (!graphCache.containsKey(sourceId)) {
-          graphCache.put(new Node(sourceId, relationship));
-        } else {
-          graphCache.addRelationship(sourceId, relationship);
-        }
+        builder.addRelationship(resultSet.getInt(1), resultSet.getInt(2), resultSet.getDouble(3));
       }
       resultSet.close();
     } catch (SQLException e) {
@@ -146,10 +321,10 @@ public class PostgresGraph implements Graph {
    * Handles sql query
    * SELECT DISTINCT target, cost
    * FROM edges_table
-   * WHERE source = %s AND source != target
+   * WHERE source = ? AND source != target
    * ORDER BY target
    */
-  private void storeNodeAndRelationshipsByDemand(int sourceId, ResultSet resultSet) {
+  private Node storeNodeAndRelationshipsByDemand(int sourceId, ResultSet resultSet) {
     List<Relationship> relationships = new ArrayList<>();
     try {
       while (resultSet.next()) {
@@ -161,8 +336,41 @@ public class PostgresGraph implements Graph {
     } catch (SQLException e) {
       throw new IllegalStateException("Error while reading results from query.", e);
     }
-    if (!graphCache.containsKey(sourceId)) {
-      graphCache.put(new Node(sourceId, relationships));
+    Node node = new Node(sourceId, relationships);
+    graphCache.put(node);
+    return node;
+  }
+
+  /**
+   * Handles sql query
+   * SELECT DISTINCT source, target, cost
+   * FROM edges_table
+   * WHERE source = ANY(?) AND source != target
+   * ORDER BY source, target
+   */
+  private Node storeNodesAndRelationshipsByDemand(List<Integer> sourceIds, int requestedId, ResultSet resultSet) {
+    Map<Integer, List<Relationship>> relationshipsBySource = new HashMap<>();
+    try {
+      while (resultSet.next()) {
+        int sourceId = resultSet.getInt(1);
+        int targetId = resultSet.getInt(2);
+        double cost = resultSet.getDouble(3);
+        relationshipsBySource.computeIfAbsent(sourceId, id -> new ArrayList<>()).add(new Relationship(cost, targetId));
+      }
+      resultSet.close();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Error while reading results from query.", e);
+    }
+    // Nodes without relationships are cached too, so they are not queried again.
+    Node requestedNode = null;
+    for (int sourceId : sourceIds) {
+      List<Relationship> relationships = relationshipsBySource.get(sourceId);
+      Node node = new Node(sourceId, relationships != null ? relationships : new ArrayList<>());
+      graphCache.put(node);
+      if (sourceId == requestedId) {
+        requestedNode = node;
+      }
     }
+    return requestedNode;
   }
 }
@@ -0,0 +1,229 @@
+package dataaccess;
+
+import algorithm.dijkstra.PrimitiveOneToManyDijkstra;
+import common.Timer;
+import model.graph.CompressedGraph;
+import model.graph.Graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tile graph used by AccessMode.REGION to choose which part of a graph to load for a given input.
+ *
+ * Tiles are ranges of tileSize consecutive node ids, so a region is loaded with the same range queries as a
+ * partitioned load. A relationship of the tile graph goes from a tile to each tile reached by one of its nodes, with
+ * the lowest cost among those relationships, which makes tile distances lower bounds of graph distances between
+ * the tiles. Tiles stay compact when close nodes have close ids, otherwise regions grow and more of the search
+ * falls back to loading nodes on demand.
+ *
+ * File layout (big endian):
+ * int magic, int version, int nodeCount, int tileSize, int tileCount, int relationshipCount,
+ * int[tileCount + 1] offsets, int[relationshipCount] targets, double[relationshipCount] costs.
+ */
+public class RegionIndex {
+  static final String REGION_FILE_TEMPLATE = "graph.%s.tiles";
+  static final int MAGIC = 0x54535254;
+  static final int VERSION = 1;
+  // Number of node ids per tile when exporting, set with -Dgraph.region.tile.size.
+  public static final int TILE_SIZE = Integer.getInteger("graph.region.tile.size", 1024);
+  // Tiles whose detour between two inputs is at most (1 + SLACK) times their distance are loaded,
+  // set with -Dgraph.region.slack.
+  static final double SLACK = Double.parseDouble(System.getProperty("graph.region.slack", "0.25"));
+  // Rings of neighbour tiles added around the chosen ones, set with -Dgraph.region.margin.
+  static final int MARGIN = Integer.getInteger("graph.region.margin", 1);
+
+  private final int nodeCount;
+  private final int tileSize;
+  private final CompressedGraph tiles;
+  private final CompressedGraph reverseTiles;
+
+  private RegionIndex(int nodeCount, int tileSize, CompressedGraph tiles, CompressedGraph reverseTiles) {
+    this.nodeCount = nodeCount;
+    this.tileSize = tileSize;
+    this.tiles = tiles;
+    this.reverseTiles = reverseTiles;
+  }
+
+  public static File getRegionFile(Graph.Country graphCountry) {
+    return new File(String.format(REGION_FILE_TEMPLATE, graphCountry.toString().toLowerCase()));
+  }
+
+  /**
+   * Exports the tile graph of nodes 0 to nodeCount - 1. Relationships of the graph are visited once, only the tile
+   * graph is kept in memory.
+   */
+  public static void export(Graph graph, int nodeCount, int tileSize, File regionFile) {
+    Timer exportTimer = new Timer();
+    exportTimer.startCounter();
+    int tileCount = (nodeCount + tileSize - 1) / tileSize;
+    int[] offsets = new int[tileCount + 1];
+    int[] targets = new int[tileCount * 8];
+    double[] costs = new double[targets.length];
+    int relationshipCount = 0;
+    Map<Integer, Double> tileCosts = new TreeMap<>();
+    for (int tile = 0; tile < tileCount; tile++) {
+      offsets[tile] = relationshipCount;
+      int sourceTile = tile;
+      int end = Math.min((tile + 1) * tileSize, nodeCount);
+      for (int nodeId = tile * tileSize; nodeId < end; nodeId++) {
+        graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+          int targetTile = endNodeId / tileSize;
+          if (targetTile != sourceTile) {
+            tileCosts.merge(targetTile, cost, Math::min);
+          }
+        });
+      }
+      if (relationshipCount + tileCosts.size() > targets.length) {
+        targets = Arrays.copyOf(targets, 2 * (relationshipCount + tileCosts.size()));
+        costs = Arrays.copyOf(costs, targets.length);
+      }
+      for (Map.Entry<Integer, Double> tileCost : tileCosts.entrySet()) {
+        targets[relationshipCount] = tileCost.getKey();
+        costs[relationshipCount] = tileCost.getValue();
+        relationshipCount++;
+      }
+      tileCosts.clear();
+    }
+    offsets[tileCount] = relationshipCount;
+    try (DataOutputStream output =
+             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(regionFile), 1 << 16))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(nodeCount);
+      output.writeInt(tileSize);
+      output.writeInt(tileCount);
+      output.writeInt(relationshipCount);
+      for (int offset : offsets) {
+        output.writeInt(offset);
+      }
+      for (int i = 0; i < relationshipCount; i++) {
+        output.writeInt(targets[i]);
+      }
+      for (int i = 0; i < relationshipCount; i++) {
+        output.writeDouble(costs[i]);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error writing region file: %s", regionFile), e);
+    }
+    System.out.println(String.format(
+        "Exported %s tiles and %s tile relationships to %s in: %ss",
+        tileCount, relationshipCount, regionFile, exportTimer.endCounter()));
+  }
+
+  public static RegionIndex read(File regionFile) {
+    try (DataInputStream input =
+             new DataInputStream(new BufferedInputStream(new FileInputStream(regionFile), 1 << 16))) {
+      if (input.readInt() != MAGIC) {
+        throw new IllegalArgumentException(String.format("Not a region file: %s", regionFile));
+      }
+      int version = input.readInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException(
+            String.format("Unsupported region file version %s in %s, expected %s.", version, regionFile, VERSION));
+      }
+      int nodeCount = input.readInt();
+      int tileSize = input.readInt();
+      int tileCount = input.readInt();
+      int relationshipCount = input.readInt();
+      int[] offsets = new int[tileCount + 1];
+      for (int i = 0; i <= tileCount; i++) {
+        offsets[i] = input.readInt();
+      }
+      int[] targets = new int[relationshipCount];
+      for (int i = 0; i < relationshipCount; i++) {
+        targets[i] = input.readInt();
+      }
+      double[] costs = new double[relationshipCount];
+      for (int i = 0; i < relationshipCount; i++) {
+        costs[i] = input.readDouble();
+      }
+      CompressedGraph.Builder builder = new CompressedGraph.Builder(tileCount, relationshipCount);
+      for (int tile = 0; tile < tileCount; tile++) {
+        for (int i = offsets[tile]; i < offsets[tile + 1]; i++) {
+          builder.addRelationship(tile, targets[i], costs[i]);
+        }
+      }
+      CompressedGraph tiles = builder.build();
+      return new RegionIndex(nodeCount, tileSize, tiles, CompressedGraph.transpose(tiles, tileCount));
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Error reading region file: %s", regionFile), e);
+    }
+  }
+
+  /**
+   * Chooses the region for the given input nodes, as pairs of [from, to) node ids in increasing order. A tile is in
+   * the region when it holds an input node, or when going through it from one input to another costs at most
+   * (1 + slack) times the tile distance between the two inputs. Margin rings of neighbour tiles are then added, as
+   * tile distances only approximate the graph.
+   */
+  public int[] selectRanges(List<Integer> nodeIds, double slack, int margin) {
+    int tileCount = (nodeCount + tileSize - 1) / tileSize;
+    int[] inputTiles = new int[nodeIds.size()];
+    double[][] distancesFrom = new double[inputTiles.length][];
+    double[][] distancesTo = new double[inputTiles.length][];
+    for (int i = 0; i < inputTiles.length; i++) {
+      inputTiles[i] = nodeIds.get(i) / tileSize;
+      distancesFrom[i] = PrimitiveOneToManyDijkstra.findAllShortestPaths(tiles, tileCount, inputTiles[i]);
+      distancesTo[i] = PrimitiveOneToManyDijkstra.findAllShortestPaths(reverseTiles, tileCount, inputTiles[i]);
+    }
+    boolean[] selected = new boolean[tileCount];
+    for (int inputTile : inputTiles) {
+      selected[inputTile] = true;
+    }
+    for (int i = 0; i < inputTiles.length; i++) {
+      for (int j = 0; j < inputTiles.length; j++) {
+        double bound = (1 + slack) * distancesFrom[i][inputTiles[j]];
+        if (i == j || Double.isInfinite(bound)) {
+          continue;
+        }
+        for (int tile = 0; tile < tileCount; tile++) {
+          if (distancesFrom[i][tile] + distancesTo[j][tile] <= bound) {
+            selected[tile] = true;
+          }
+        }
+      }
+    }
+    for (int ring = 0; ring < margin; ring++) {
+      boolean[] grown = selected.clone();
+      for (int tile = 0; tile < tileCount; tile++) {
+        if (selected[tile]) {
+          tiles.forEachRelationship(tile, (endTile, cost) -> grown[endTile] = true);
+          reverseTiles.forEachRelationship(tile, (endTile, cost) -> grown[endTile] = true);
+        }
+      }
+      selected = grown;
+    }
+    // Consecutive tiles are joined in a single range.
+    int[] ranges = new int[2 * tileCount];
+    int rangeCount = 0;
+    for (int tile = 0; tile < tileCount; tile++) {
+      if (!selected[tile]) {
+        continue;
+      }
+      int to = Math.min((tile + 1) * tileSize, nodeCount);
+      if (rangeCount > 0 && ranges[2 * rangeCount - 1] == tile * tileSize) {
+        ranges[2 * rangeCount - 1] = to;
+      } else {
+        ranges[2 * rangeCount] = tile * tileSize;
+        ranges[2 * rangeCount + 1] = to;
+        rangeCount++;
+      }
+    }
+    return Arrays.copyOf(ranges, 2 * rangeCount);
+  }
+
+  public int[] selectRanges(List<Integer> nodeIds) {
+    return selectRanges(nodeIds, SLACK, MARGIN);
+  }
+}
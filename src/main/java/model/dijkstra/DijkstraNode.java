@@ -1,7 +1,7 @@
 package model.dijkstra;
 
 import algorithm.dijkstra.FibonacciHeap;
-import model.graph.Node;
+import algorithm.dijkstra.PairingHeap;
 import model.graph.Relationship;
 
 /**
@@ -12,10 +12,13 @@ public class DijkstraNode {
   private boolean gray;
   private boolean black;
   private double distancetoNode;
-//  private FibonacciHeap.Entry<DijkstraNode> queueEntry;
+  // Handle given by DijkstraQueue for indexed queue types, -1 until first enqueued.
+  private int queueIndex = -1;
+  private FibonacciHeap.Entry<DijkstraNode> queueEntry;
+  private PairingHeap.Entry<DijkstraNode> pairingQueueEntry;
 
-  public DijkstraNode(Node node) {
-    this.nodeId = node.getId();
+  public DijkstraNode(int nodeId) {
+    this.nodeId = nodeId;
   }
 
   public int getNodeId() {
@@ -50,11 +53,27 @@ public class DijkstraNode {
     this.distancetoNode = distancetoNode;
   }
 
-//  public FibonacciHeap.Entry<DijkstraNode> getQueueEntry() {
-//    return queueEntry;
-//  }
-//
-//  public void setQueueEntry(FibonacciHeap.Entry<DijkstraNode> queueEntry) {
-//    this.queueEntry = queueEntry;
-//  }
+  public int getQueueIndex() {
+    return queueIndex;
+  }
+
+  public void setQueueIndex(int queueIndex) {
+    this.queueIndex = queueIndex;
+  }
+
+  public FibonacciHeap.Entry<DijkstraNode> getQueueEntry() {
+    return queueEntry;
+  }
+
+  public void setQueueEntry(FibonacciHeap.Entry<DijkstraNode> queueEntry) {
+    this.queueEntry = queueEntry;
+  }
+
+  public PairingHeap.Entry<DijkstraNode> getPairingQueueEntry() {
+    return pairingQueueEntry;
+  }
+
+  public void setPairingQueueEntry(PairingHeap.Entry<DijkstraNode> pairingQueueEntry) {
+    this.pairingQueueEntry = pairingQueueEntry;
+  }
 }
@@ -0,0 +1,136 @@
+package model.dijkstra;
+
+import com.koloboke.collect.map.hash.HashIntIntMap;
+import com.koloboke.collect.map.hash.HashIntIntMaps;
+
+import java.util.Arrays;
+
+/**
+ * Holds distance and color of every node visited by one to many dijkstra resolution in primitive arrays.
+ *
+ * When the number of nodes is known (graph held in memory) arrays are indexed by node id directly.
+ * Otherwise (graph loaded on demand) node ids are remapped to compact indexes in visiting order.
+ * The same state can be reset and reused between searches, only touched entries are cleared.
+ */
+public class DijkstraState {
+  public static final byte WHITE = 0;
+  public static final byte GRAY = 1;
+  public static final byte BLACK = 2;
+
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private final boolean dense;
+  // Only used when not dense, maps node id to index and index to node id.
+  private final HashIntIntMap indexMap;
+  private int[] nodeIds;
+
+  private double[] distances;
+  private byte[] colors;
+  // Indexes visited since last reset.
+  private int[] visited;
+  private int visitedCount;
+
+  /**
+   * Dense state indexed by node id when nodeCount is known, or remapped state when nodeCount is negative.
+   */
+  public DijkstraState(int nodeCount) {
+    dense = nodeCount >= 0;
+    int capacity = dense ? Math.max(nodeCount, 1) : INITIAL_CAPACITY;
+    indexMap = dense ? null : HashIntIntMaps.newMutableMap(INITIAL_CAPACITY);
+    nodeIds = dense ? null : new int[capacity];
+    distances = new double[capacity];
+    colors = new byte[capacity];
+    visited = new int[INITIAL_CAPACITY];
+  }
+
+  /* Returns index for the given node id, creating a white entry if node was never visited. */
+  public int indexOf(int nodeId) {
+    if (dense) {
+      ensureCapacity(nodeId + 1);
+      return nodeId;
+    }
+    int index = indexMap.getOrDefault(nodeId, -1);
+    if (index < 0) {
+      index = indexMap.size();
+      ensureCapacity(index + 1);
+      indexMap.put(nodeId, index);
+      nodeIds[index] = nodeId;
+    }
+    return index;
+  }
+
+  /* Returns index for the given node id or -1 if node was never visited. */
+  public int findIndex(int nodeId) {
+    if (dense) {
+      return nodeId < colors.length && colors[nodeId] != WHITE ? nodeId : -1;
+    }
+    return indexMap.getOrDefault(nodeId, -1);
+  }
+
+  public int getNodeId(int index) {
+    return dense ? index : nodeIds[index];
+  }
+
+  public double getDistance(int index) {
+    return distances[index];
+  }
+
+  public void setDistance(int index, double distance) {
+    distances[index] = distance;
+  }
+
+  public boolean isWhite(int index) {
+    return colors[index] == WHITE;
+  }
+
+  public boolean isGray(int index) {
+    return colors[index] == GRAY;
+  }
+
+  public boolean isBlack(int index) {
+    return colors[index] == BLACK;
+  }
+
+  public void setGray(int index) {
+    if (colors[index] == WHITE) {
+      if (visitedCount == visited.length) {
+        visited = Arrays.copyOf(visited, visited.length * 2);
+      }
+      visited[visitedCount++] = index;
+    }
+    colors[index] = GRAY;
+  }
+
+  public void setBlack(int index) {
+    colors[index] = BLACK;
+  }
+
+  /* Number of nodes visited (gray or black) since last reset. */
+  public int getVisitedCount() {
+    return visitedCount;
+  }
+
+  /* Clears state for a new search, keeping allocated arrays. */
+  public void reset() {
+    if (dense) {
+      for (int i = 0; i < visitedCount; i++) {
+        colors[visited[i]] = WHITE;
+      }
+    } else {
+      Arrays.fill(colors, 0, indexMap.size(), WHITE);
+      indexMap.clear();
+    }
+    visitedCount = 0;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > colors.length) {
+      int newCapacity = Math.max(capacity, colors.length + (colors.length >> 1));
+      distances = Arrays.copyOf(distances, newCapacity);
+      colors = Arrays.copyOf(colors, newCapacity);
+      if (!dense) {
+        nodeIds = Arrays.copyOf(nodeIds, newCapacity);
+      }
+    }
+  }
+}
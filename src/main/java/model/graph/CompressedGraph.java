@@ -0,0 +1,347 @@
+package model.graph;
+
+import instrumentation.ObjectSizeFetcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Graph held in memory as compressed sparse rows (CSR).
+ * Relationships of node i are stored in targets and costs between offsets[i] and offsets[i + 1], so all
+ * relationships of the graph live in three flat primitive arrays instead of one object per relationship.
+ *
+ * A graph of a region only holds some ranges of node ids. Its rows are indexed from 0 in range order, so memory
+ * follows the size of the region and not the highest node id.
+ */
+public class CompressedGraph implements Graph {
+  private final int[] offsets;
+  private final int[] targets;
+  private final double[] costs;
+  // Pairs of [from, to) node ids held by a region graph, ordered, or null when the graph holds ids 0 to count - 1.
+  private final int[] ranges;
+  // Row of the first node of each range.
+  private final int[] rangeRows;
+
+  CompressedGraph(int[] offsets, int[] targets, double[] costs) {
+    this(offsets, targets, costs, null, null);
+  }
+
+  private CompressedGraph(int[] offsets, int[] targets, double[] costs, int[] ranges, int[] rangeRows) {
+    this.offsets = offsets;
+    this.targets = targets;
+    this.costs = costs;
+    this.ranges = ranges;
+    this.rangeRows = rangeRows;
+  }
+
+  /**
+   * Graphs of a region return -1, as nodes outside of the region are not held in memory.
+   */
+  @Override
+  public int getNodeCount() {
+    return ranges == null ? offsets.length - 1 : -1;
+  }
+
+  public int getRelationshipCount() {
+    return offsets[offsets.length - 1];
+  }
+
+  /* If relationships for the given node id were loaded in this graph. */
+  public boolean containsNode(int nodeId) {
+    return rowOf(nodeId) >= 0;
+  }
+
+  @Override
+  public Node getNode(int nodeId) {
+    int row = rowOf(nodeId);
+    if (row < 0) {
+      return new Node(nodeId, new ArrayList<>());
+    }
+    int start = offsets[row];
+    int end = offsets[row + 1];
+    List<Relationship> relationships = new ArrayList<>(end - start);
+    for (int i = start; i < end; i++) {
+      relationships.add(new Relationship(costs[i], targets[i]));
+    }
+    return new Node(nodeId, relationships);
+  }
+
+  @Override
+  public void forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    int row = rowOf(nodeId);
+    if (row < 0) {
+      return;
+    }
+    int end = offsets[row + 1];
+    for (int i = offsets[row]; i < end; i++) {
+      consumer.accept(targets[i], costs[i]);
+    }
+  }
+
+  @Override
+  public void prefetch(int[] nodeIds, int count) {
+    // All nodes are already in memory.
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release, arrays are collected with the graph.
+  }
+
+  @Override
+  public int getCacheSize() {
+    return offsets.length - 1 + getRelationshipCount();
+  }
+
+  @Override
+  public String getCacheFootprint() {
+    return ObjectSizeFetcher.getObjectFootprint(this);
+  }
+
+  /* Row of the given node id in offsets, or -1 when the node is not held by this graph. */
+  private int rowOf(int nodeId) {
+    if (ranges == null) {
+      return nodeId >= 0 && nodeId < offsets.length - 1 ? nodeId : -1;
+    }
+    // Last range starting at or before the node id.
+    int low = 0;
+    int high = rangeRows.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (ranges[2 * middle] <= nodeId) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    if (high < 0 || nodeId >= ranges[2 * high + 1]) {
+      return -1;
+    }
+    return rangeRows[high] + nodeId - ranges[2 * high];
+  }
+
+  /**
+   * Joins graphs built for consecutive ranges of node ids, so ranges can be loaded in parallel. Builders must be
+   * given in order of their first node id, and nodes between two ranges have no relationships.
+   */
+  public static CompressedGraph merge(List<Builder> builders) {
+    return merge(builders, 0);
+  }
+
+  /**
+   * Same as above, holding at least nodes 0 to minimumNodeCount - 1: nodes after the last one with relationships, as
+   * sinks with the highest ids, have none.
+   */
+  public static CompressedGraph merge(List<Builder> builders, int minimumNodeCount) {
+    int nodeCount = 0;
+    int relationshipCount = 0;
+    for (Builder builder : builders) {
+      if (builder.firstNodeId < nodeCount) {
+        throw new IllegalArgumentException(
+            String.format("Node ranges must be ordered, got %s after %s.", builder.firstNodeId, nodeCount - 1));
+      }
+      nodeCount = builder.firstNodeId + builder.nodeCount;
+      relationshipCount += builder.relationshipCount;
+    }
+    nodeCount = Math.max(nodeCount, minimumNodeCount);
+    int[] offsets = new int[nodeCount + 1];
+    int[] targets = new int[relationshipCount];
+    double[] costs = new double[relationshipCount];
+    int nodeId = 0;
+    int relationshipStart = 0;
+    for (Builder builder : builders) {
+      while (nodeId < builder.firstNodeId) {
+        offsets[nodeId++] = relationshipStart;
+      }
+      for (int i = 0; i < builder.nodeCount; i++) {
+        offsets[nodeId++] = relationshipStart + builder.offsets[i];
+      }
+      System.arraycopy(builder.targets, 0, targets, relationshipStart, builder.relationshipCount);
+      System.arraycopy(builder.costs, 0, costs, relationshipStart, builder.relationshipCount);
+      relationshipStart += builder.relationshipCount;
+    }
+    while (nodeId < nodeCount) {
+      offsets[nodeId++] = relationshipStart;
+    }
+    offsets[nodeCount] = relationshipCount;
+    return new CompressedGraph(offsets, targets, costs);
+  }
+
+  /**
+   * Joins graphs built for the given ranges of node ids, pairs of [from, to) in increasing order, into the graph of
+   * a region. Builders must be given in the same order, each starting at the first node id of its range.
+   */
+  public static CompressedGraph mergeRegion(List<Builder> builders, int[] ranges) {
+    if (ranges.length != 2 * builders.size()) {
+      throw new IllegalArgumentException(
+          String.format("Expected one builder per range, got %s for %s ranges.", builders.size(), ranges.length / 2));
+    }
+    int[] rangeRows = new int[builders.size()];
+    int rowCount = 0;
+    int relationshipCount = 0;
+    for (int i = 0; i < builders.size(); i++) {
+      Builder builder = builders.get(i);
+      int from = ranges[2 * i];
+      int to = ranges[2 * i + 1];
+      if (builder.firstNodeId != from || builder.nodeCount > to - from || (i > 0 && from < ranges[2 * i - 1])) {
+        throw new IllegalArgumentException(String.format(
+            "Builder from %s with %s nodes does not match range [%s, %s).",
+            builder.firstNodeId, builder.nodeCount, from, to));
+      }
+      rangeRows[i] = rowCount;
+      rowCount += to - from;
+      relationshipCount += builder.relationshipCount;
+    }
+    int[] offsets = new int[rowCount + 1];
+    int[] targets = new int[relationshipCount];
+    double[] costs = new double[relationshipCount];
+    int relationshipStart = 0;
+    for (int i = 0; i < builders.size(); i++) {
+      Builder builder = builders.get(i);
+      int row = rangeRows[i];
+      int rangeEnd = row + ranges[2 * i + 1] - ranges[2 * i];
+      for (int j = 0; j < builder.nodeCount; j++) {
+        offsets[row++] = relationshipStart + builder.offsets[j];
+      }
+      // Nodes at the end of the range without relationships.
+      while (row < rangeEnd) {
+        offsets[row++] = relationshipStart + builder.relationshipCount;
+      }
+      System.arraycopy(builder.targets, 0, targets, relationshipStart, builder.relationshipCount);
+      System.arraycopy(builder.costs, 0, costs, relationshipStart, builder.relationshipCount);
+      relationshipStart += builder.relationshipCount;
+    }
+    offsets[rowCount] = relationshipCount;
+    return new CompressedGraph(offsets, targets, costs, ranges.clone(), rangeRows);
+  }
+
+  /**
+   * Returns the graph with every relationship of nodes 0 to nodeCount - 1 turned around, so relationships of a node
+   * are the ones arriving at it. Relationships are visited twice, once to count them by target and once to place
+   * them.
+   */
+  public static CompressedGraph transpose(Graph graph, int nodeCount) {
+    int[] offsets = new int[nodeCount + 1];
+    for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+      graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+        if (endNodeId < 0 || endNodeId >= nodeCount) {
+          throw new IllegalArgumentException(
+              String.format("Relationship to node %s outside of the %s nodes transposed.", endNodeId, nodeCount));
+        }
+        offsets[endNodeId + 1]++;
+      });
+    }
+    for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+      offsets[nodeId + 1] += offsets[nodeId];
+    }
+    int[] targets = new int[offsets[nodeCount]];
+    double[] costs = new double[offsets[nodeCount]];
+    // Next free slot of each node, sources are placed in increasing order.
+    int[] positions = Arrays.copyOf(offsets, nodeCount);
+    for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+      int sourceId = nodeId;
+      graph.forEachRelationship(nodeId, (endNodeId, cost) -> {
+        int position = positions[endNodeId]++;
+        targets[position] = sourceId;
+        costs[position] = cost;
+      });
+    }
+    return new CompressedGraph(offsets, targets, costs);
+  }
+
+  /**
+   * Builds a CompressedGraph from relationships ordered by source id, as returned by the loaders.
+   */
+  public static class Builder {
+    private final int firstNodeId;
+    private int[] offsets;
+    private int[] targets;
+    private double[] costs;
+
+    // Counted from firstNodeId.
+    private int nodeCount;
+    private int relationshipCount;
+
+    /**
+     * Expected sizes are only used to size the arrays up front, arrays grow if they are exceeded.
+     */
+    public Builder(int expectedNodes, int expectedRelationships) {
+      this(0, expectedNodes, expectedRelationships);
+    }
+
+    /**
+     * Builder for a range of node ids starting at firstNodeId, to be joined with CompressedGraph.merge.
+     */
+    public Builder(int firstNodeId, int expectedNodes, int expectedRelationships) {
+      this.firstNodeId = firstNodeId;
+      offsets = new int[Math.max(expectedNodes, 1) + 1];
+      targets = new int[Math.max(expectedRelationships, 1)];
+      costs = new double[Math.max(expectedRelationships, 1)];
+    }
+
+    /**
+     * Adds a relationship for the given source. Sources must be added in non decreasing order.
+     */
+    public void addRelationship(int sourceId, int targetId, double cost) {
+      if (sourceId < firstNodeId + nodeCount - 1) {
+        throw new IllegalArgumentException(String.format(
+            "Relationships must be ordered by source id, got %s after %s.",
+            sourceId, Math.max(firstNodeId, firstNodeId + nodeCount - 1)));
+      }
+      // Every node up to the source starts where the relationships loaded so far end.
+      while (firstNodeId + nodeCount <= sourceId) {
+        if (nodeCount + 1 >= offsets.length) {
+          offsets = Arrays.copyOf(offsets, grow(offsets.length));
+        }
+        offsets[nodeCount++] = relationshipCount;
+      }
+      if (relationshipCount == targets.length) {
+        targets = Arrays.copyOf(targets, grow(targets.length));
+        costs = Arrays.copyOf(costs, targets.length);
+      }
+      targets[relationshipCount] = targetId;
+      costs[relationshipCount] = cost;
+      relationshipCount++;
+    }
+
+    /* Returns the size of the graph built so far (number of nodes + number of relationships). */
+    public int size() {
+      return nodeCount + relationshipCount;
+    }
+
+    /**
+     * Builds the graph up to the last node with relationships. Use build(minimumNodeCount) when nodes after it, as sinks
+     * with the highest ids, must be held too.
+     */
+    public CompressedGraph build() {
+      return build(0);
+    }
+
+    /**
+     * Builds the graph holding at least nodes 0 to minimumNodeCount - 1, nodes after the last source have no
+     * relationships.
+     */
+    public CompressedGraph build(int minimumNodeCount) {
+      if (firstNodeId != 0) {
+        return merge(Collections.singletonList(this), minimumNodeCount);
+      }
+      int graphNodeCount = Math.max(minimumNodeCount, nodeCount);
+      // Only copy when the expected sizes were wrong, as a copy doubles memory for a moment.
+      if (offsets.length != graphNodeCount + 1) {
+        offsets = Arrays.copyOf(offsets, graphNodeCount + 1);
+      }
+      Arrays.fill(offsets, nodeCount, graphNodeCount + 1, relationshipCount);
+      if (targets.length != relationshipCount) {
+        targets = Arrays.copyOf(targets, relationshipCount);
+        costs = Arrays.copyOf(costs, relationshipCount);
+      }
+      return new CompressedGraph(offsets, targets, costs);
+    }
+
+    private static int grow(int length) {
+      return (int) Math.min(Integer.MAX_VALUE - 8, length + (length >> 1) + 1L);
+    }
+  }
+}
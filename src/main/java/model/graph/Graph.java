@@ -34,10 +34,23 @@ public interface Graph {
 
   enum AccessMode {
     ALL,
-    ON_DEMAND
+    ON_DEMAND,
+    // Loads the region around the input nodes chosen by a RegionIndex, nodes outside of it are loaded on demand.
+    REGION
   }
 
   Node getNode(int nodeId);
+
+  // Visits every relationship leaving the given node without copying it into Node or Relationship objects.
+  void forEachRelationship(int nodeId, RelationshipConsumer consumer);
+
+  // Number of node ids held in memory (ids 0 to count - 1), or -1 when nodes are loaded on demand.
+  int getNodeCount();
+
+  // Hints that relationships of the first count given nodes will be visited soon, so graphs loading on demand
+  // can fetch them together. Graphs holding every node in memory ignore it.
+  void prefetch(int[] nodeIds, int count);
+
   void close();
 
   // Following methods used only for memory usage debugging.
@@ -37,6 +37,16 @@ public class Node {
     return relationships;
   }
 
+  /**
+   * Visits relationships with an indexed loop, so no iterator is created.
+   */
+  public void forEachRelationship(RelationshipConsumer consumer) {
+    for (int i = 0; i < relationships.size(); i++) {
+      Relationship relationship = relationships.get(i);
+      consumer.accept(relationship.getEndNodeId(), relationship.getCost());
+    }
+  }
+
   /**
    * Only used when loading graph on pre-processing phase (AccessMode.ALL).
    * Adds a relationship for an already created Node.
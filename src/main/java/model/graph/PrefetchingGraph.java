@@ -0,0 +1,226 @@
+package model.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Graph decorator loading relationships of prefetch hints in background threads, so the database answers while the
+ * search keeps expanding nodes already in cache.
+ *
+ * Hinted ids wait in a bounded queue. Workers take them in batches and load them through the wrapped graph, which
+ * batches them with its own prefetch and keeps them in its cache, so the wrapped graph must be thread safe. When the
+ * search visits a node, the visit is counted as a hit if the node was already loaded, as late if a worker was still
+ * loading it and as cancelled if it was still queued. Loaded nodes never visited are wasted.
+ *
+ * A late visit waits for the worker, as its round trip is already on the way. A visit to a node still queued does not
+ * wait for every id ahead of it: it takes the load from the queue, so the worker drops it, and the node is loaded by
+ * the search itself.
+ */
+public class PrefetchingGraph implements Graph {
+  // Number of background threads, set with -Dgraph.prefetch.threads=2. 0 disables prefetching.
+  public static final int THREADS = Integer.getInteger("graph.prefetch.threads", 0);
+  // Maximum number of ids waiting to be loaded, set with -Dgraph.prefetch.depth. Further hints are dropped.
+  public static final int DEPTH = Integer.getInteger("graph.prefetch.depth", 4096);
+  // Maximum number of ids a worker hands to the wrapped graph at once, set with -Dgraph.prefetch.batch.
+  public static final int BATCH_SIZE = Integer.getInteger("graph.prefetch.batch", 256);
+
+  private static final RelationshipConsumer IGNORE = (endNodeId, cost) -> { };
+
+  private final Graph graph;
+  private final BlockingQueue<Load> queue;
+  // Loads of hinted ids not visited yet.
+  private final ConcurrentHashMap<Integer, Load> prefetched = new ConcurrentHashMap<>();
+  private final ExecutorService workers;
+  private final int batchSize;
+
+  private final LongAdder requested = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder loaded = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder late = new LongAdder();
+  private final LongAdder cancelled = new LongAdder();
+  private final LongAdder wasted = new LongAdder();
+
+  public PrefetchingGraph(Graph graph) {
+    this(graph, THREADS, DEPTH, BATCH_SIZE);
+  }
+
+  public PrefetchingGraph(Graph graph, int threads, int depth, int batchSize) {
+    if (threads < 1 || depth < 1 || batchSize < 1) {
+      throw new IllegalArgumentException(String.format(
+          "Prefetch threads, depth and batch size must be positive: %s, %s, %s", threads, depth, batchSize));
+    }
+    this.graph = graph;
+    this.queue = new LinkedBlockingQueue<>(depth);
+    this.batchSize = batchSize;
+    this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "graph-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (int i = 0; i < threads; i++) {
+      workers.execute(this::loadPrefetched);
+    }
+  }
+
+  @Override
+  public Node getNode(int nodeId) {
+    recordVisit(nodeId);
+    return graph.getNode(nodeId);
+  }
+
+  @Override
+  public void forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    recordVisit(nodeId);
+    graph.forEachRelationship(nodeId, consumer);
+  }
+
+  @Override
+  public int getNodeCount() {
+    return graph.getNodeCount();
+  }
+
+  /**
+   * Queues ids for the workers instead of hinting the wrapped graph from the searching thread.
+   */
+  @Override
+  public void prefetch(int[] nodeIds, int count) {
+    for (int i = 0; i < count; i++) {
+      int nodeId = nodeIds[i];
+      Load load = new Load(nodeId);
+      Load previousLoad = prefetched.putIfAbsent(nodeId, load);
+      // Waiting ids are not queued twice, loaded ones are queued again as the cache may have evicted them since.
+      if (previousLoad != null) {
+        if (!previousLoad.isDone() || !prefetched.replace(nodeId, previousLoad, load)) {
+          continue;
+        }
+        if (previousLoad.loaded) {
+          wasted.increment();
+        }
+      }
+      if (queue.offer(load)) {
+        requested.increment();
+      } else {
+        prefetched.remove(nodeId, load);
+        dropped.increment();
+      }
+    }
+  }
+
+  /**
+   * Stops the workers before closing the wrapped graph, as they may still be using its connections.
+   */
+  @Override
+  public void close() {
+    workers.shutdownNow();
+    try {
+      workers.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    graph.close();
+  }
+
+  @Override
+  public int getCacheSize() {
+    return graph.getCacheSize();
+  }
+
+  @Override
+  public String getCacheFootprint() {
+    return graph.getCacheFootprint();
+  }
+
+  /**
+   * Counters to tune depth and batch size: many late visits call for more threads or smaller batches, many cancelled
+   * ones for more threads or a smaller depth, much waste for a smaller depth. Loads not visited so far count as
+   * wasted, so callers report them once the search is done.
+   */
+  public String getStatistics() {
+    // The ones not loaded yet are not counted as loaded either.
+    long unvisited = prefetched.values().stream().filter(load -> load.loaded).count();
+    return String.format(
+        "Prefetch requested: %s, dropped: %s, loaded: %s, hits: %s, late: %s, cancelled: %s, wasted: %s",
+        requested.sum(), dropped.sum(), loaded.sum(), hits.sum(), late.sum(), cancelled.sum(),
+        wasted.sum() + unvisited);
+  }
+
+  private void recordVisit(int nodeId) {
+    Load load = prefetched.remove(nodeId);
+    if (load == null) {
+      return;
+    }
+    if (load.state.compareAndSet(Load.QUEUED, Load.CANCELLED)) {
+      cancelled.increment();
+    } else if (load.isDone()) {
+      if (load.loaded) {
+        hits.increment();
+      }
+    } else {
+      late.increment();
+      load.join();
+    }
+  }
+
+  /* Worker loop, runs until close interrupts it. */
+  private void loadPrefetched() {
+    List<Load> batch = new ArrayList<>(batchSize);
+    int[] batchIds = new int[batchSize];
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batch, batchSize - 1);
+      // Loads taken by a visit in the meantime are dropped.
+      batch.removeIf(load -> !load.state.compareAndSet(Load.QUEUED, Load.TAKEN));
+      for (int i = 0; i < batch.size(); i++) {
+        batchIds[i] = batch.get(i).nodeId;
+      }
+      try {
+        // The first miss loads the whole batch, the following ids are then found in cache.
+        graph.prefetch(batchIds, batch.size());
+        for (Load load : batch) {
+          graph.forEachRelationship(load.nodeId, IGNORE);
+          load.loaded = true;
+          loaded.increment();
+          load.complete(null);
+        }
+      } catch (RuntimeException e) {
+        // Visits then load the node themselves, so a failure here is reported again by the search.
+      } finally {
+        // Waiting visits are released even when loading failed.
+        for (Load load : batch) {
+          load.complete(null);
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  /* Completed once the worker loaded the node, or failed to. Never completed when a visit cancelled it. */
+  private static class Load extends CompletableFuture<Void> {
+    static final int QUEUED = 0;
+    static final int TAKEN = 1;
+    static final int CANCELLED = 2;
+
+    final int nodeId;
+    final AtomicInteger state = new AtomicInteger(QUEUED);
+    // Set before completing, so visits after completion see it.
+    volatile boolean loaded;
+
+    Load(int nodeId) {
+      this.nodeId = nodeId;
+    }
+  }
+}
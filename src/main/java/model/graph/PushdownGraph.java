@@ -0,0 +1,11 @@
+package model.graph;
+
+import java.util.List;
+
+/**
+ * Graph that can run a one to many search inside its database, so relationships are not fetched by the client.
+ */
+public interface PushdownGraph extends Graph {
+  /* Distances from the source to each target, in the order of the targets, or -1 if a target is unreachable. */
+  double[] findShortestPaths(int sourceId, List<Integer> targetIds);
+}
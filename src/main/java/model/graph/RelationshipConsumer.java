@@ -0,0 +1,8 @@
+package model.graph;
+
+/**
+ * Receives the relationships of a node as primitives, so they can be visited without creating objects.
+ */
+public interface RelationshipConsumer {
+  void accept(int endNodeId, double cost);
+}
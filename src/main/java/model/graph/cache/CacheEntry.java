@@ -0,0 +1,25 @@
+package model.graph.cache;
+
+import model.graph.Node;
+
+/**
+ * Entry of PolicyGraphCache, linked in the lists kept by its eviction policy.
+ */
+public class CacheEntry {
+  final Node node;
+  // Estimated footprint, as counted against the cache capacity.
+  long bytes;
+
+  CacheEntry previous;
+  CacheEntry next;
+
+  // Used by ClockEvictionPolicy.
+  boolean referenced;
+  // Used by TinyLfuEvictionPolicy, list the entry is in.
+  byte segment;
+
+  CacheEntry(Node node, long bytes) {
+    this.node = node;
+    this.bytes = bytes;
+  }
+}
@@ -0,0 +1,39 @@
+package model.graph.cache;
+
+/**
+ * Evicts entries with the CLOCK algorithm. Reads only set a flag, entries are moved when the hand passes them.
+ */
+class ClockEvictionPolicy implements EvictionPolicy {
+  // The first entry is the one under the hand.
+  private final EntryList entries = new EntryList();
+
+  @Override
+  public void onInsert(CacheEntry entry) {
+    entries.addLast(entry);
+  }
+
+  @Override
+  public void onAccess(CacheEntry entry) {
+    entry.referenced = true;
+  }
+
+  @Override
+  public void onResize(CacheEntry entry, long extraBytes) {
+    entries.resize(extraBytes);
+  }
+
+  @Override
+  public CacheEntry evict() {
+    CacheEntry entry;
+    while ((entry = entries.first()) != null) {
+      entries.remove(entry);
+      if (!entry.referenced) {
+        return entry;
+      }
+      // Second chance, entry goes back behind the hand.
+      entry.referenced = false;
+      entries.addLast(entry);
+    }
+    return null;
+  }
+}
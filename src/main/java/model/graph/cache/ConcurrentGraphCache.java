@@ -0,0 +1,161 @@
+package model.graph.cache;
+
+import model.graph.Node;
+import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache for graph that can be shared between threads, removing old entries with the CLOCK algorithm.
+ *
+ * Reads never lock: a hit only sets the referenced bit of the entry. Inserts and evictions lock the clock queue,
+ * where an entry referenced since the hand last passed gets a second chance instead of being removed. This
+ * approximates LRU without moving entries on every read.
+ */
+public class ConcurrentGraphCache implements GraphCache {
+
+  // Map entry, clock entry and its slot in the clock queue.
+  private static final int ENTRY_BYTES = NodeFootprint.MAP_ENTRY_BYTES + 32;
+
+  private final Map<Integer, Entry> map = new ConcurrentHashMap<>();
+  // Entries in insertion order, the head is the entry under the clock hand. Guarded by itself.
+  private final Queue<Entry> clock = new ArrayDeque<>();
+
+  private volatile long capacity;
+  // Only changed while holding the clock lock.
+  private volatile long byteCount;
+  private volatile int elementCount;
+
+  /**
+   * Capacity is in bytes, as estimated by NodeFootprint.
+   */
+  public ConcurrentGraphCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public boolean containsKey(int nodeId) {
+    Entry entry = map.get(nodeId);
+    if (entry != null) {
+      entry.referenced = true;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(int nodeId) {
+    return map.containsKey(nodeId);
+  }
+
+  @Override
+  public Node get(int nodeId) {
+    Entry entry = map.get(nodeId);
+    if (entry != null) {
+      entry.referenced = true;
+      return entry.node;
+    }
+    return null;
+  }
+
+  @Override
+  public boolean forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    Node node = get(nodeId);
+    if (node == null) {
+      return false;
+    }
+    // The node stays valid after an eviction, only the map entry is removed.
+    node.forEachRelationship(consumer);
+    return true;
+  }
+
+  @Override
+  public void put(Node node) {
+    Entry entry = new Entry(node);
+    if (map.putIfAbsent(node.getId(), entry) != null) {
+      return;
+    }
+    synchronized (clock) {
+      clock.add(entry);
+      elementCount += entry.weight;
+      byteCount += NodeFootprint.of(node, ENTRY_BYTES);
+      evict();
+    }
+  }
+
+  /**
+   * Relationships are added while no other thread reads the node, as when loading the graph.
+   */
+  @Override
+  public void addRelationship(int nodeId, Relationship relationship) {
+    synchronized (clock) {
+      Entry entry = map.get(nodeId);
+      entry.node.addRelationship(relationship);
+      entry.weight++;
+      elementCount++;
+      byteCount += NodeFootprint.RELATIONSHIP_BYTES;
+      evict();
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Entry entry : map.values()) {
+      Node node = entry.node;
+      for (Relationship relationship : node.getRelationships()) {
+        builder
+            .append(node.getId())
+            .append(",")
+            .append(relationship.getCost())
+            .append(",")
+            .append(relationship.getEndNodeId())
+            .append("\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public int size() {
+    return elementCount;
+  }
+
+  @Override
+  public void limitCapacity() {
+    capacity = byteCount;
+    System.out.println("Cache capacity limited to: " + capacity + " bytes");
+  }
+
+  /* Moves the clock hand until the cache fits its capacity. Must hold the clock lock. */
+  private void evict() {
+    while (byteCount > capacity && !clock.isEmpty()) {
+      Entry entry = clock.poll();
+      if (entry.referenced) {
+        // Second chance, entry goes back behind the hand.
+        entry.referenced = false;
+        clock.add(entry);
+      } else {
+        map.remove(entry.node.getId(), entry);
+        elementCount -= entry.weight;
+        byteCount -= NodeFootprint.of(entry.node, ENTRY_BYTES);
+      }
+    }
+  }
+
+  private static class Entry {
+    final Node node;
+    // Number of nodes + number of relationships, as counted by size().
+    int weight;
+    volatile boolean referenced;
+
+    Entry(Node node) {
+      this.node = node;
+      this.weight = 1 + node.getRelationships().size();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package model.graph.cache;
+
+/**
+ * Double linked list of cache entries, from oldest to newest, keeping the sum of their bytes.
+ */
+class EntryList {
+  private final CacheEntry head = new CacheEntry(null, 0);
+  private long bytes;
+
+  EntryList() {
+    head.next = head;
+    head.previous = head;
+  }
+
+  boolean isEmpty() {
+    return head.next == head;
+  }
+
+  /* Oldest entry, or null if empty. */
+  CacheEntry first() {
+    return isEmpty() ? null : head.next;
+  }
+
+  /* Newest entry, or null if empty. */
+  CacheEntry last() {
+    return isEmpty() ? null : head.previous;
+  }
+
+  long bytes() {
+    return bytes;
+  }
+
+  void addLast(CacheEntry entry) {
+    entry.previous = head.previous;
+    entry.next = head;
+    head.previous.next = entry;
+    head.previous = entry;
+    bytes += entry.bytes;
+  }
+
+  void remove(CacheEntry entry) {
+    entry.next.previous = entry.previous;
+    entry.previous.next = entry.next;
+    entry.next = null;
+    entry.previous = null;
+    bytes -= entry.bytes;
+  }
+
+  void moveToLast(CacheEntry entry) {
+    remove(entry);
+    addLast(entry);
+  }
+
+  /* Called after bytes of an entry in this list changed. */
+  void resize(long extraBytes) {
+    bytes += extraBytes;
+  }
+}
@@ -0,0 +1,27 @@
+package model.graph.cache;
+
+/**
+ * Decides which entry PolicyGraphCache evicts when it goes over capacity.
+ */
+public interface EvictionPolicy {
+  enum Type {
+    // Least recently used entry is evicted.
+    LRU,
+    // Second chance FIFO, entries read since the hand last passed are kept.
+    CLOCK,
+    // Small LRU window in front of a segmented LRU, admission decided by access frequency.
+    TINY_LFU
+  }
+
+  /* Called when a new entry is inserted in the cache. */
+  void onInsert(CacheEntry entry);
+
+  /* Called when a cached entry is read. */
+  void onAccess(CacheEntry entry);
+
+  /* Called after bytes of a cached entry grew by the given amount. */
+  void onResize(CacheEntry entry, long extraBytes);
+
+  /* Removes the entry to be evicted from the policy and returns it, or null if the policy has no entries. */
+  CacheEntry evict();
+}
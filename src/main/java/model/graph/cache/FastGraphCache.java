@@ -2,6 +2,7 @@ package model.graph.cache;
 
 import model.graph.Node;
 import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -11,13 +12,20 @@ import java.util.Map;
  */
 public class FastGraphCache implements GraphCache {
 
+  // Map entry and linked list entry.
+  private static final int ENTRY_BYTES = NodeFootprint.MAP_ENTRY_BYTES + 24;
+
   private final Map<Integer, Entry> map = new HashMap<>();
   private final Entry head = new Entry(null);
 
-  private int capacity;
+  private long capacity;
+  private long byteCount;
   private int elementCount;
 
-  public FastGraphCache(int capacity) {
+  /**
+   * Capacity is in bytes, as estimated by NodeFootprint.
+   */
+  public FastGraphCache(long capacity) {
     this.capacity = capacity;
     head.next = head;
     head.previous = head;
@@ -34,33 +42,45 @@ public class FastGraphCache implements GraphCache {
     return false;
   }
 
+  @Override
+  public boolean contains(int nodeId) {
+    return map.containsKey(nodeId);
+  }
+
   @Override
   public Node get(int nodeId) {
-    return map.get(nodeId).node;
+    Entry entry = map.get(nodeId);
+    return entry != null ? entry.node : null;
+  }
+
+  @Override
+  public boolean forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (!containsKey(nodeId)) {
+      return false;
+    }
+    map.get(nodeId).node.forEachRelationship(consumer);
+    return true;
   }
 
   @Override
   public void put(Node node) {
+    if (map.containsKey(node.getId())) {
+      return;
+    }
     Entry entry = new Entry(node);
     map.put(node.getId(), entry);
     insert(entry);
     elementCount += 1 + node.getRelationships().size();
-    while (elementCount > capacity) {
-      Node oldNode = remove(head.next).node;
-      map.remove(oldNode.getId());
-      elementCount -= 1 + oldNode.getRelationships().size();
-    }
+    byteCount += NodeFootprint.of(node, ENTRY_BYTES);
+    evict();
   }
 
   @Override
   public void addRelationship(int nodeId, Relationship relationship) {
     map.get(nodeId).node.addRelationship(relationship);
     elementCount++;
-    while (elementCount > capacity) {
-      Node oldNode = remove(head.next).node;
-      map.remove(oldNode.getId());
-      elementCount -= 1 + oldNode.getRelationships().size();
-    }
+    byteCount += NodeFootprint.RELATIONSHIP_BYTES;
+    evict();
   }
 
   @Override
@@ -88,8 +108,17 @@ public class FastGraphCache implements GraphCache {
 
   @Override
   public void limitCapacity() {
-    capacity = elementCount;
-    System.out.println("Cache capacity limited to: " + capacity);
+    capacity = byteCount;
+    System.out.println("Cache capacity limited to: " + capacity + " bytes");
+  }
+
+  private void evict() {
+    while (byteCount > capacity) {
+      Node oldNode = remove(head.next).node;
+      map.remove(oldNode.getId());
+      elementCount -= 1 + oldNode.getRelationships().size();
+      byteCount -= NodeFootprint.of(oldNode, ENTRY_BYTES);
+    }
   }
 
   private void insert(Entry entry) {
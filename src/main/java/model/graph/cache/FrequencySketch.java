@@ -0,0 +1,69 @@
+package model.graph.cache;
+
+/**
+ * Count-min sketch estimating how often node ids were accessed, with 4 bit counters that are halved
+ * periodically so old popularity fades.
+ */
+class FrequencySketch {
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+  private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+  // Counter i of row r is counter c = r * width + i, in the low half of table[c / 2] when c is even, else the high one.
+  private final byte[] table;
+  private final int widthMask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * Width is rounded up to a power of 2. Counters are halved after 10 times the width increments.
+   */
+  FrequencySketch(int width) {
+    int powerOfTwo = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+    table = new byte[DEPTH * powerOfTwo / 2];
+    widthMask = powerOfTwo - 1;
+    sampleSize = 10 * powerOfTwo;
+  }
+
+  /* Estimated number of accesses, the minimum of the counters of the id. */
+  int frequency(int nodeId) {
+    int frequency = MAX_COUNT;
+    for (int row = 0; row < DEPTH; row++) {
+      frequency = Math.min(frequency, get(index(row, nodeId)));
+    }
+    return frequency;
+  }
+
+  void increment(int nodeId) {
+    boolean added = false;
+    for (int row = 0; row < DEPTH; row++) {
+      int index = index(row, nodeId);
+      if (get(index) < MAX_COUNT) {
+        // Adding 1 to the half of the byte holding the counter, it cannot carry as the counter is below 15.
+        table[index >> 1] += 1 << ((index & 1) << 2);
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      // Halves both counters of the byte, dropping the bit shifted from the high one into the low one.
+      table[i] = (byte) ((table[i] & 0xFF) >>> 1 & 0x77);
+    }
+    additions /= 2;
+  }
+
+  private int get(int index) {
+    return (table[index >> 1] >>> ((index & 1) << 2)) & MAX_COUNT;
+  }
+
+  private int index(int row, int nodeId) {
+    int hash = nodeId * SEEDS[row];
+    hash ^= hash >>> 16;
+    return row * (widthMask + 1) + (hash & widthMask);
+  }
+}
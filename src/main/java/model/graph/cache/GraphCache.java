@@ -2,6 +2,7 @@ package model.graph.cache;
 
 import model.graph.Node;
 import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 
 /**
  * Interface for graph cache.
@@ -9,16 +10,28 @@ import model.graph.Relationship;
 public interface GraphCache {
   enum Type {
     SLOW,
-    FAST
+    FAST,
+    // Safe to share between threads, with lock free reads and CLOCK eviction.
+    CONCURRENT,
+    // Primitive arrays and an open addressing index, no object per cached node.
+    PRIMITIVE,
+    // Hash map with the eviction policy given to GraphCacheFactory.
+    POLICY
   }
 
   /* If cache already contains the node for the given id. */
   boolean containsKey(int nodeId);
 
-  /* Retrieves a node from the cache for the given id. */
+  /* If cache contains the node, without counting it as an access, so eviction order and frequencies stay the same. */
+  boolean contains(int nodeId);
+
+  /* Retrieves a node from the cache for the given id, or null if it is not cached. */
   Node get(int nodeId);
 
-  /* Inserts a node in the cache. */
+  /* Visits relationships of the node if it is cached, without copying them. Returns false if not cached. */
+  boolean forEachRelationship(int nodeId, RelationshipConsumer consumer);
+
+  /* Inserts a node in the cache, ignored if the node is already cached. */
   void put(Node node);
 
   /* Adds a relationship for a node already in the cache. */
@@ -4,17 +4,77 @@ package model.graph.cache;
  * Factory for creating graph cache implementations.
  */
 public class GraphCacheFactory {
-  private final static int CAPACITY = 500;
+  // Capacity in bytes, or 0 to use a fraction of the max heap. Set with -Dgraph.cache.bytes=268435456.
+  private final static long CAPACITY_BYTES = Long.getLong("graph.cache.bytes", 0);
+  // Fraction of the max heap used by caches with capacity. Set with -Dgraph.cache.heap.fraction=0.5.
+  private final static double HEAP_FRACTION =
+      Double.parseDouble(System.getProperty("graph.cache.heap.fraction", "0.25"));
+
+  // Cache type used by the graph implementations, FAST as in the baseline experiments. Lock-free reads for parallel
+  // searches are opt-in with -Dgraph.cache.type=CONCURRENT.
+  public final static GraphCache.Type DEFAULT_TYPE =
+      GraphCache.Type.valueOf(System.getProperty("graph.cache.type", GraphCache.Type.FAST.name()));
+  // Eviction policy used by GraphCache.Type.POLICY, can be changed with -Dgraph.cache.policy=LRU.
+  public final static EvictionPolicy.Type DEFAULT_POLICY =
+      EvictionPolicy.Type.valueOf(System.getProperty("graph.cache.policy", EvictionPolicy.Type.TINY_LFU.name()));
 
   public static GraphCache create(GraphCache.Type type, boolean useCapacity) {
-    int capacity = useCapacity ? CAPACITY : Integer.MAX_VALUE;
+    return create(type, DEFAULT_POLICY, useCapacity);
+  }
+
+  /**
+   * Policy is only used by GraphCache.Type.POLICY, other types have their eviction built in.
+   */
+  public static GraphCache create(GraphCache.Type type, EvictionPolicy.Type policy, boolean useCapacity) {
+    long capacity = useCapacity ? getCapacityBytes() : Long.MAX_VALUE;
     switch (type) {
       case SLOW:
         return new SlowGraphCache(capacity);
       case FAST:
         return new FastGraphCache(capacity);
+      case CONCURRENT:
+        return new ConcurrentGraphCache(capacity);
+      case PRIMITIVE:
+        return new PrimitiveGraphCache(capacity);
+      case POLICY:
+        return new PolicyGraphCache(createPolicy(policy, capacity), capacity);
       default:
         throw new IllegalArgumentException(String.format("Non recognized graph cache type: %s", type));
     }
   }
+
+  /**
+   * Bytes a cache with capacity may use, so it can be sized to the heap given to the process.
+   */
+  public static long getCapacityBytes() {
+    if (CAPACITY_BYTES > 0) {
+      return CAPACITY_BYTES;
+    }
+    if (HEAP_FRACTION <= 0 || HEAP_FRACTION > 1) {
+      throw new IllegalArgumentException(String.format("Heap fraction must be in (0, 1], got %s.", HEAP_FRACTION));
+    }
+    return (long) (Runtime.getRuntime().maxMemory() * HEAP_FRACTION);
+  }
+
+  /**
+   * Creates a cache that can be shared by searches running in parallel. Caches that are not thread safe by
+   * themselves are synchronized.
+   */
+  public static GraphCache createThreadSafe(GraphCache.Type type, boolean useCapacity) {
+    GraphCache graphCache = create(type, useCapacity);
+    return type == GraphCache.Type.CONCURRENT ? graphCache : new SynchronizedGraphCache(graphCache);
+  }
+
+  private static EvictionPolicy createPolicy(EvictionPolicy.Type policy, long capacity) {
+    switch (policy) {
+      case LRU:
+        return new LruEvictionPolicy();
+      case CLOCK:
+        return new ClockEvictionPolicy();
+      case TINY_LFU:
+        return new TinyLfuEvictionPolicy(capacity);
+      default:
+        throw new IllegalArgumentException(String.format("Non recognized eviction policy: %s", policy));
+    }
+  }
 }
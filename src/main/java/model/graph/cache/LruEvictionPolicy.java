@@ -0,0 +1,32 @@
+package model.graph.cache;
+
+/**
+ * Evicts the least recently used entry.
+ */
+class LruEvictionPolicy implements EvictionPolicy {
+  private final EntryList entries = new EntryList();
+
+  @Override
+  public void onInsert(CacheEntry entry) {
+    entries.addLast(entry);
+  }
+
+  @Override
+  public void onAccess(CacheEntry entry) {
+    entries.moveToLast(entry);
+  }
+
+  @Override
+  public void onResize(CacheEntry entry, long extraBytes) {
+    entries.resize(extraBytes);
+  }
+
+  @Override
+  public CacheEntry evict() {
+    CacheEntry entry = entries.first();
+    if (entry != null) {
+      entries.remove(entry);
+    }
+    return entry;
+  }
+}
@@ -0,0 +1,23 @@
+package model.graph.cache;
+
+import model.graph.Node;
+
+/**
+ * Estimated heap footprint of cached nodes, used by caches to stay within a byte capacity.
+ *
+ * Sizes assume a 64 bit JVM with compressed references, as measured with ObjectSizeFetcher. Measuring every node
+ * when it is cached would cost more than loading it.
+ */
+class NodeFootprint {
+  // Node object, its ArrayList and the header of the list backing array.
+  static final int NODE_BYTES = 64;
+  // Relationship object and its reference in the list backing array.
+  static final int RELATIONSHIP_BYTES = 28;
+  // Hash map node and boxed Integer key used by caches holding Node objects in a map.
+  static final int MAP_ENTRY_BYTES = 56;
+
+  /* Bytes of a node and its relationships, plus the bytes the cache spends on its own entry. */
+  static long of(Node node, int entryBytes) {
+    return entryBytes + NODE_BYTES + (long) RELATIONSHIP_BYTES * node.getRelationships().size();
+  }
+}
@@ -0,0 +1,126 @@
+package model.graph.cache;
+
+import model.graph.Node;
+import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache for graph that removes entries chosen by a pluggable EvictionPolicy.
+ */
+public class PolicyGraphCache implements GraphCache {
+  // Map entry and cache entry.
+  private static final int ENTRY_BYTES = NodeFootprint.MAP_ENTRY_BYTES + 40;
+
+  private final Map<Integer, CacheEntry> map = new HashMap<>();
+  private final EvictionPolicy policy;
+
+  private long capacity;
+  private long byteCount;
+  private int elementCount;
+
+  /**
+   * Capacity is in bytes, as estimated by NodeFootprint.
+   */
+  public PolicyGraphCache(EvictionPolicy policy, long capacity) {
+    this.policy = policy;
+    this.capacity = capacity;
+  }
+
+  @Override
+  public boolean containsKey(int nodeId) {
+    CacheEntry entry = map.get(nodeId);
+    if (entry == null) {
+      return false;
+    }
+    policy.onAccess(entry);
+    return true;
+  }
+
+  @Override
+  public boolean contains(int nodeId) {
+    return map.containsKey(nodeId);
+  }
+
+  @Override
+  public Node get(int nodeId) {
+    CacheEntry entry = map.get(nodeId);
+    return entry != null ? entry.node : null;
+  }
+
+  @Override
+  public boolean forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (!containsKey(nodeId)) {
+      return false;
+    }
+    map.get(nodeId).node.forEachRelationship(consumer);
+    return true;
+  }
+
+  @Override
+  public void put(Node node) {
+    if (map.containsKey(node.getId())) {
+      return;
+    }
+    CacheEntry entry = new CacheEntry(node, NodeFootprint.of(node, ENTRY_BYTES));
+    map.put(node.getId(), entry);
+    policy.onInsert(entry);
+    elementCount += 1 + node.getRelationships().size();
+    byteCount += entry.bytes;
+    evict();
+  }
+
+  @Override
+  public void addRelationship(int nodeId, Relationship relationship) {
+    CacheEntry entry = map.get(nodeId);
+    entry.node.addRelationship(relationship);
+    entry.bytes += NodeFootprint.RELATIONSHIP_BYTES;
+    policy.onResize(entry, NodeFootprint.RELATIONSHIP_BYTES);
+    elementCount++;
+    byteCount += NodeFootprint.RELATIONSHIP_BYTES;
+    evict();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (CacheEntry entry : map.values()) {
+      Node node = entry.node;
+      for (Relationship relationship : node.getRelationships()) {
+        builder
+            .append(node.getId())
+            .append(",")
+            .append(relationship.getCost())
+            .append(",")
+            .append(relationship.getEndNodeId())
+            .append("\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public int size() {
+    return elementCount;
+  }
+
+  @Override
+  public void limitCapacity() {
+    capacity = byteCount;
+    System.out.println("Cache capacity limited to: " + capacity + " bytes");
+  }
+
+  private void evict() {
+    while (byteCount > capacity) {
+      CacheEntry entry = policy.evict();
+      if (entry == null) {
+        return;
+      }
+      map.remove(entry.node.getId());
+      elementCount -= 1 + entry.node.getRelationships().size();
+      byteCount -= entry.bytes;
+    }
+  }
+}
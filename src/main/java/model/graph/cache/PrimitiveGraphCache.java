@@ -0,0 +1,242 @@
+package model.graph.cache;
+
+import com.koloboke.collect.map.hash.HashIntIntMap;
+import com.koloboke.collect.map.hash.HashIntIntMaps;
+import model.graph.Node;
+import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cache for graph that removes least recently used entries, keeping everything in primitive arrays.
+ *
+ * Each cached node takes a slot. Node ids and the links of the LRU list are int arrays indexed by slot, with
+ * slot 0 as the head of the list, and an open addressing int map finds the slot of a node id. Relationships of
+ * all nodes are stored one after the other in shared target and cost arrays. No object is created per entry,
+ * so moving an entry in the LRU list only writes a few array positions.
+ */
+public class PrimitiveGraphCache implements GraphCache {
+  private static final int HEAD = 0;
+  private static final int INITIAL_SLOTS = 64;
+  // Slot arrays and map entry, with room for growth.
+  private static final int SLOT_BYTES = 48;
+  // Target and cost, with room left for evicted relationships until arrays are compacted.
+  private static final int RELATIONSHIP_BYTES = 24;
+
+  private final HashIntIntMap slotMap = HashIntIntMaps.newMutableMap();
+
+  // Indexed by slot.
+  private int[] nodeIds = new int[INITIAL_SLOTS];
+  private int[] previous = new int[INITIAL_SLOTS];
+  private int[] next = new int[INITIAL_SLOTS];
+  private int[] relationshipStart = new int[INITIAL_SLOTS];
+  private int[] relationshipCount = new int[INITIAL_SLOTS];
+
+  // Relationships of cached nodes, evicted ranges are dropped when arrays are compacted.
+  private int[] targets = new int[INITIAL_SLOTS];
+  private double[] costs = new double[INITIAL_SLOTS];
+  private int relationshipEnd;
+  private int liveRelationships;
+
+  // Slots released by evictions are chained through next.
+  private int freeSlot = -1;
+  private int usedSlots = 1;
+
+  private long capacity;
+  private long byteCount;
+  private int elementCount;
+
+  /**
+   * Capacity is in bytes, estimated from the arrays used by each slot and relationship.
+   */
+  public PrimitiveGraphCache(long capacity) {
+    this.capacity = capacity;
+    next[HEAD] = HEAD;
+    previous[HEAD] = HEAD;
+  }
+
+  @Override
+  public boolean containsKey(int nodeId) {
+    int slot = slotMap.getOrDefault(nodeId, -1);
+    if (slot == -1) {
+      return false;
+    }
+    unlink(slot);
+    linkLast(slot);
+    return true;
+  }
+
+  @Override
+  public boolean contains(int nodeId) {
+    return slotMap.containsKey(nodeId);
+  }
+
+  @Override
+  public Node get(int nodeId) {
+    int slot = slotMap.getOrDefault(nodeId, -1);
+    if (slot == -1) {
+      return null;
+    }
+    List<Relationship> relationships = new ArrayList<>(relationshipCount[slot]);
+    int end = relationshipStart[slot] + relationshipCount[slot];
+    for (int i = relationshipStart[slot]; i < end; i++) {
+      relationships.add(new Relationship(costs[i], targets[i]));
+    }
+    return new Node(nodeId, relationships);
+  }
+
+  @Override
+  public boolean forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (!containsKey(nodeId)) {
+      return false;
+    }
+    int slot = slotMap.get(nodeId);
+    int end = relationshipStart[slot] + relationshipCount[slot];
+    for (int i = relationshipStart[slot]; i < end; i++) {
+      consumer.accept(targets[i], costs[i]);
+    }
+    return true;
+  }
+
+  @Override
+  public void put(Node node) {
+    if (slotMap.containsKey(node.getId())) {
+      return;
+    }
+    List<Relationship> relationships = node.getRelationships();
+    ensureRelationshipCapacity(relationships.size());
+    int slot = allocateSlot();
+    nodeIds[slot] = node.getId();
+    relationshipStart[slot] = relationshipEnd;
+    relationshipCount[slot] = relationships.size();
+    for (int i = 0; i < relationships.size(); i++) {
+      targets[relationshipEnd] = relationships.get(i).getEndNodeId();
+      costs[relationshipEnd] = relationships.get(i).getCost();
+      relationshipEnd++;
+    }
+    liveRelationships += relationships.size();
+    slotMap.put(node.getId(), slot);
+    linkLast(slot);
+    elementCount += 1 + relationships.size();
+    byteCount += SLOT_BYTES + (long) RELATIONSHIP_BYTES * relationships.size();
+    evict();
+  }
+
+  @Override
+  public void addRelationship(int nodeId, Relationship relationship) {
+    int slot = slotMap.get(nodeId);
+    ensureRelationshipCapacity(relationshipCount[slot] + 1);
+    // Relationships of a node must stay contiguous, so the node moves to the end unless it is already there.
+    if (relationshipStart[slot] + relationshipCount[slot] != relationshipEnd) {
+      System.arraycopy(targets, relationshipStart[slot], targets, relationshipEnd, relationshipCount[slot]);
+      System.arraycopy(costs, relationshipStart[slot], costs, relationshipEnd, relationshipCount[slot]);
+      relationshipStart[slot] = relationshipEnd;
+      relationshipEnd += relationshipCount[slot];
+    }
+    targets[relationshipEnd] = relationship.getEndNodeId();
+    costs[relationshipEnd] = relationship.getCost();
+    relationshipEnd++;
+    relationshipCount[slot]++;
+    liveRelationships++;
+    elementCount++;
+    byteCount += RELATIONSHIP_BYTES;
+    evict();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (int slot = next[HEAD]; slot != HEAD; slot = next[slot]) {
+      int end = relationshipStart[slot] + relationshipCount[slot];
+      for (int i = relationshipStart[slot]; i < end; i++) {
+        builder
+            .append(nodeIds[slot])
+            .append(",")
+            .append(costs[i])
+            .append(",")
+            .append(targets[i])
+            .append("\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public int size() {
+    return elementCount;
+  }
+
+  @Override
+  public void limitCapacity() {
+    capacity = byteCount;
+    System.out.println("Cache capacity limited to: " + capacity + " bytes");
+  }
+
+  private void evict() {
+    while (byteCount > capacity && next[HEAD] != HEAD) {
+      int slot = next[HEAD];
+      unlink(slot);
+      slotMap.remove(nodeIds[slot]);
+      elementCount -= 1 + relationshipCount[slot];
+      byteCount -= SLOT_BYTES + (long) RELATIONSHIP_BYTES * relationshipCount[slot];
+      liveRelationships -= relationshipCount[slot];
+      next[slot] = freeSlot;
+      freeSlot = slot;
+    }
+  }
+
+  private int allocateSlot() {
+    if (freeSlot != -1) {
+      int slot = freeSlot;
+      freeSlot = next[slot];
+      return slot;
+    }
+    if (usedSlots == nodeIds.length) {
+      int length = nodeIds.length * 2;
+      nodeIds = Arrays.copyOf(nodeIds, length);
+      previous = Arrays.copyOf(previous, length);
+      next = Arrays.copyOf(next, length);
+      relationshipStart = Arrays.copyOf(relationshipStart, length);
+      relationshipCount = Arrays.copyOf(relationshipCount, length);
+    }
+    return usedSlots++;
+  }
+
+  /**
+   * Makes room for the given number of relationships at the end of the arrays. Arrays are compacted, dropping
+   * relationships of evicted nodes, and grown if live relationships would still fill more than half of them.
+   */
+  private void ensureRelationshipCapacity(int extra) {
+    if (relationshipEnd + extra <= targets.length) {
+      return;
+    }
+    int length = Math.max(targets.length, 2 * (liveRelationships + extra));
+    int[] newTargets = new int[length];
+    double[] newCosts = new double[length];
+    int end = 0;
+    for (int slot = next[HEAD]; slot != HEAD; slot = next[slot]) {
+      System.arraycopy(targets, relationshipStart[slot], newTargets, end, relationshipCount[slot]);
+      System.arraycopy(costs, relationshipStart[slot], newCosts, end, relationshipCount[slot]);
+      relationshipStart[slot] = end;
+      end += relationshipCount[slot];
+    }
+    targets = newTargets;
+    costs = newCosts;
+    relationshipEnd = end;
+  }
+
+  private void linkLast(int slot) {
+    previous[slot] = previous[HEAD];
+    next[slot] = HEAD;
+    next[previous[HEAD]] = slot;
+    previous[HEAD] = slot;
+  }
+
+  private void unlink(int slot) {
+    next[previous[slot]] = next[slot];
+    previous[next[slot]] = previous[slot];
+  }
+}
@@ -2,6 +2,7 @@ package model.graph.cache;
 
 import model.graph.Node;
 import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -11,14 +12,21 @@ import java.util.Map;
  */
 public class SlowGraphCache implements GraphCache {
 
+  // Map entry and priority queue entry.
+  private static final int ENTRY_BYTES = NodeFootprint.MAP_ENTRY_BYTES + 32;
+
   private final PriorityQueue queue = new PriorityQueue();
   private final Map<Integer, Node> nodeMap = new HashMap<>();
 
-  private int capacity;
+  private long capacity;
+  private long byteCount;
   private int elementCount;
   private int sequential;
 
-  public SlowGraphCache(int capacity) {
+  /**
+   * Capacity is in bytes, as estimated by NodeFootprint.
+   */
+  public SlowGraphCache(long capacity) {
     this.capacity = capacity;
   }
 
@@ -30,32 +38,41 @@ public class SlowGraphCache implements GraphCache {
     return false;
   }
 
+  @Override
+  public boolean contains(int nodeId) {
+    return nodeMap.containsKey(nodeId);
+  }
+
   public Node get(int nodeId) {
     return nodeMap.get(nodeId);
   }
 
+  @Override
+  public boolean forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    if (!containsKey(nodeId)) {
+      return false;
+    }
+    nodeMap.get(nodeId).forEachRelationship(consumer);
+    return true;
+  }
+
   public void put(Node node) {
+    if (nodeMap.containsKey(node.getId())) {
+      return;
+    }
     nodeMap.put(node.getId(), node);
     queue.push(node.getId(), sequential++);
     elementCount += 1 + node.getRelationships().size();
-
-    while (elementCount > capacity) {
-      int oldestId = queue.pop();
-      elementCount -= 1 + nodeMap.get(oldestId).getRelationships().size();
-      nodeMap.remove(oldestId);
-    }
+    byteCount += NodeFootprint.of(node, ENTRY_BYTES);
+    evict();
   }
 
   @Override
   public void addRelationship(int nodeId, Relationship relationship) {
     nodeMap.get(nodeId).addRelationship(relationship);
     elementCount++;
-
-    while (elementCount > capacity) {
-      int oldestId = queue.pop();
-      elementCount -= 1 + nodeMap.get(oldestId).getRelationships().size();
-      nodeMap.remove(oldestId);
-    }
+    byteCount += NodeFootprint.RELATIONSHIP_BYTES;
+    evict();
   }
 
   @Override
@@ -82,6 +99,14 @@ public class SlowGraphCache implements GraphCache {
 
   @Override
   public void limitCapacity() {
-    capacity = elementCount;
+    capacity = byteCount;
+  }
+
+  private void evict() {
+    while (byteCount > capacity) {
+      Node oldNode = nodeMap.remove(queue.pop());
+      elementCount -= 1 + oldNode.getRelationships().size();
+      byteCount -= NodeFootprint.of(oldNode, ENTRY_BYTES);
+    }
   }
 }
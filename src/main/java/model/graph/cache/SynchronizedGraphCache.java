@@ -0,0 +1,81 @@
+package model.graph.cache;
+
+import model.graph.Node;
+import model.graph.Relationship;
+import model.graph.RelationshipConsumer;
+
+/**
+ * Makes any graph cache safe to share between threads by synchronizing every call on the wrapped cache.
+ * Callers must treat a null get or a false forEachRelationship as a miss, as another thread may evict a node
+ * between two calls.
+ */
+public class SynchronizedGraphCache implements GraphCache {
+  private final GraphCache graphCache;
+
+  public SynchronizedGraphCache(GraphCache graphCache) {
+    this.graphCache = graphCache;
+  }
+
+  @Override
+  public boolean containsKey(int nodeId) {
+    synchronized (graphCache) {
+      return graphCache.containsKey(nodeId);
+    }
+  }
+
+  @Override
+  public boolean contains(int nodeId) {
+    synchronized (graphCache) {
+      return graphCache.contains(nodeId);
+    }
+  }
+
+  @Override
+  public Node get(int nodeId) {
+    synchronized (graphCache) {
+      return graphCache.get(nodeId);
+    }
+  }
+
+  @Override
+  public boolean forEachRelationship(int nodeId, RelationshipConsumer consumer) {
+    synchronized (graphCache) {
+      return graphCache.forEachRelationship(nodeId, consumer);
+    }
+  }
+
+  @Override
+  public void put(Node node) {
+    synchronized (graphCache) {
+      graphCache.put(node);
+    }
+  }
+
+  @Override
+  public void addRelationship(int nodeId, Relationship relationship) {
+    synchronized (graphCache) {
+      graphCache.addRelationship(nodeId, relationship);
+    }
+  }
+
+  @Override
+  public int size() {
+    synchronized (graphCache) {
+      return graphCache.size();
+    }
+  }
+
+  @Override
+  public void limitCapacity() {
+    synchronized (graphCache) {
+      graphCache.limitCapacity();
+    }
+  }
+
+  @Override
+  public String toString() {
+    synchronized (graphCache) {
+      return graphCache.toString();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package model.graph.cache;
+
+/**
+ * W-TinyLFU eviction. New entries go to a small LRU window. Entries leaving the window join the end of
+ * probation, and on eviction the newest of them competes with the oldest probation entry: the one accessed less
+ * often according to a FrequencySketch is evicted. Probation entries accessed again move to protected.
+ *
+ * Nodes settled once by Dijkstra stay in the window and leave quickly, while nodes read by many searches
+ * stay in main.
+ */
+class TinyLfuEvictionPolicy implements EvictionPolicy {
+  private static final byte WINDOW = 0;
+  private static final byte PROBATION = 1;
+  private static final byte PROTECTED = 2;
+
+  private static final double WINDOW_FRACTION = 0.01;
+  private static final double PROTECTED_FRACTION = 0.8;
+  // Expected bytes per entry, only used to size the sketch.
+  private static final int EXPECTED_ENTRY_BYTES = 256;
+  private static final int MAX_SKETCH_WIDTH = 1 << 24;
+
+  private final EntryList window = new EntryList();
+  private final EntryList probation = new EntryList();
+  private final EntryList protectedEntries = new EntryList();
+  private final FrequencySketch sketch;
+
+  private final long windowCapacity;
+  private final long protectedCapacity;
+
+  TinyLfuEvictionPolicy(long capacity) {
+    windowCapacity = (long) (capacity * WINDOW_FRACTION);
+    protectedCapacity = (long) ((capacity - windowCapacity) * PROTECTED_FRACTION);
+    sketch = new FrequencySketch((int) Math.max(1024, Math.min(MAX_SKETCH_WIDTH, capacity / EXPECTED_ENTRY_BYTES)));
+  }
+
+  @Override
+  public void onInsert(CacheEntry entry) {
+    sketch.increment(entry.node.getId());
+    entry.segment = WINDOW;
+    window.addLast(entry);
+    // Entries leaving the window become admission candidates at the end of probation.
+    while (window.bytes() > windowCapacity && window.first() != entry) {
+      CacheEntry candidate = window.first();
+      window.remove(candidate);
+      candidate.segment = PROBATION;
+      probation.addLast(candidate);
+    }
+  }
+
+  @Override
+  public void onAccess(CacheEntry entry) {
+    sketch.increment(entry.node.getId());
+    switch (entry.segment) {
+      case WINDOW:
+        window.moveToLast(entry);
+        break;
+      case PROBATION:
+        // Accessed again while in main, promote and demote protected entries over its capacity.
+        probation.remove(entry);
+        entry.segment = PROTECTED;
+        protectedEntries.addLast(entry);
+        while (protectedEntries.bytes() > protectedCapacity && protectedEntries.first() != entry) {
+          CacheEntry demoted = protectedEntries.first();
+          protectedEntries.remove(demoted);
+          demoted.segment = PROBATION;
+          probation.addLast(demoted);
+        }
+        break;
+      case PROTECTED:
+        protectedEntries.moveToLast(entry);
+        break;
+      default:
+        throw new IllegalStateException(String.format("Unknown cache segment: %s", entry.segment));
+    }
+  }
+
+  @Override
+  public void onResize(CacheEntry entry, long extraBytes) {
+    getList(entry.segment).resize(extraBytes);
+  }
+
+  @Override
+  public CacheEntry evict() {
+    CacheEntry victim = probation.first();
+    if (victim == null) {
+      victim = protectedEntries.isEmpty() ? window.first() : protectedEntries.first();
+      return victim != null ? remove(victim) : null;
+    }
+    // Newest candidate is admitted only if it is accessed more often than the oldest entry of probation.
+    CacheEntry candidate = probation.last();
+    if (candidate != victim && sketch.frequency(candidate.node.getId()) <= sketch.frequency(victim.node.getId())) {
+      return remove(candidate);
+    }
+    return remove(victim);
+  }
+
+  private CacheEntry remove(CacheEntry entry) {
+    getList(entry.segment).remove(entry);
+    return entry;
+  }
+
+  private EntryList getList(byte segment) {
+    switch (segment) {
+      case WINDOW:
+        return window;
+      case PROBATION:
+        return probation;
+      case PROTECTED:
+        return protectedEntries;
+      default:
+        throw new IllegalStateException(String.format("Unknown cache segment: %s", segment));
+    }
+  }
+}
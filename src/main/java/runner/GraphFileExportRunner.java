@@ -0,0 +1,49 @@
+package runner;
+
+import algorithm.dijkstra.ContractionHierarchy;
+import algorithm.dijkstra.Landmarks;
+import dataaccess.GraphDatabaseFactory;
+import dataaccess.GraphFileExporter;
+import dataaccess.MappedGraph;
+import dataaccess.RegionIndex;
+import model.graph.Graph;
+
+/**
+ * Exports a graph from one of the databases to the binary file used by GraphDatabaseFactory.DatabaseType.MMAP_FILE,
+ * then the tile graph used by Graph.AccessMode.REGION and the landmarks used by the ALT engine from that file.
+ * The contraction hierarchy is only built with -Dch.export=true.
+ */
+public class GraphFileExportRunner {
+
+  public static void main(String[] args) {
+    GraphDatabaseFactory.DatabaseType dbType = GraphDatabaseFactory.DatabaseType.valueOf(args[0]);
+    Graph.AccessMode accessMode = Graph.AccessMode.valueOf(args[1]);
+    Graph.Country graphCountry = Graph.Country.valueOf(args[2]);
+
+    Graph graph = null;
+    try {
+      graph = GraphDatabaseFactory.create(dbType, accessMode, graphCountry);
+      GraphFileExporter.export(graph, graphCountry.getNodes(), MappedGraph.getGraphFile(graphCountry));
+    } finally {
+      // Always close connection.
+      if (graph != null) {
+        graph.close();
+      }
+    }
+    MappedGraph mappedGraph = new MappedGraph(MappedGraph.getGraphFile(graphCountry));
+    try {
+      RegionIndex.export(
+          mappedGraph, graphCountry.getNodes(), RegionIndex.TILE_SIZE, RegionIndex.getRegionFile(graphCountry));
+      if (Landmarks.COUNT > 0) {
+        Landmarks.select(mappedGraph, graphCountry.getNodes(), Landmarks.COUNT)
+            .export(Landmarks.getLandmarksFile(graphCountry));
+      }
+      if (ContractionHierarchy.EXPORT) {
+        ContractionHierarchy.build(mappedGraph, graphCountry.getNodes(), ContractionHierarchy.THREADS)
+            .export(ContractionHierarchy.getHierarchyFile(graphCountry));
+      }
+    } finally {
+      mappedGraph.close();
+    }
+  }
+}
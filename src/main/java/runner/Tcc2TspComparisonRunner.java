@@ -1,13 +1,16 @@
 package runner;
 
+import algorithm.dijkstra.ContractionHierarchy;
 import algorithm.dijkstra.DijkstraCostMatrix;
 import algorithm.dijkstra.DijkstraOutOfMemoryError;
 import algorithm.dijkstra.DijkstraQueue;
+import algorithm.dijkstra.Landmarks;
 import algorithm.tsp.TspSolver;
 import common.Timer;
 import data.Inputs;
 import dataaccess.GraphDatabaseFactory;
 import model.graph.Graph;
+import model.graph.PrefetchingGraph;
 
 import java.io.IOException;
 import java.util.*;
@@ -27,7 +30,11 @@ public class Tcc2TspComparisonRunner {
     Graph.AccessMode accessMode = Graph.AccessMode.valueOf(args[1]);
     Graph.Country graphCountry = Graph.Country.valueOf(args[2]);
     DijkstraQueue.Type queueType =
-        args.length == 4 ? DijkstraQueue.Type.valueOf(args[3]) : DijkstraQueue.Type.PRIORITY_QUEUE;
+        args.length >= 4 ? DijkstraQueue.Type.valueOf(args[3]) : DijkstraQueue.Type.PRIORITY_QUEUE;
+    DijkstraCostMatrix.Engine engine =
+        args.length >= 5 ? DijkstraCostMatrix.Engine.valueOf(args[4]) : DijkstraCostMatrix.Engine.NODE_MAP;
+    // Number of threads building the distance matrix.
+    int parallelism = args.length >= 6 ? Integer.parseInt(args[5]) : 1;
 
     addLoggerFileHandler(dbType, accessMode, graphCountry);
 
@@ -37,14 +44,24 @@ public class Tcc2TspComparisonRunner {
     // Retrieves set of 4 nodes given the graph country.
     List<Integer> input = Inputs.getInputForGraphCountry(graphCountry);
     logger.info(String.format("Input: %s", input));
+    // Landmark distances and hierarchy are read once, they do not depend on the database.
+    Landmarks landmarks =
+        engine == DijkstraCostMatrix.Engine.ALT ? Landmarks.read(Landmarks.getLandmarksFile(graphCountry)) : null;
+    ContractionHierarchy hierarchy = engine == DijkstraCostMatrix.Engine.CONTRACTION_HIERARCHY
+        || engine == DijkstraCostMatrix.Engine.CH_MANY_TO_MANY
+        ? ContractionHierarchy.read(ContractionHierarchy.getHierarchyFile(graphCountry))
+        : null;
     for (int i = 0; i < 3; i++) {
       Timer graphLoadTimer = new Timer();
       graphLoadTimer.startCounter();
       Graph graph = null;
       try {
-        graph = GraphDatabaseFactory.create(dbType, accessMode, graphCountry);
+        graph = GraphDatabaseFactory.create(dbType, accessMode, graphCountry, input);
         logger.info(String.format("Loaded graph in: %ss", graphLoadTimer.endCounter()));
-        solveTsp(graph, input, queueType);
+        solveTsp(graph, input, queueType, engine, parallelism, landmarks, hierarchy);
+        if (graph instanceof PrefetchingGraph) {
+          logger.info(((PrefetchingGraph) graph).getStatistics());
+        }
       } catch (DijkstraOutOfMemoryError e) {
         logger.info("Graph cache size: " + graph.getCacheSize());
         logger.info(graph.getCacheFootprint());
@@ -61,11 +78,19 @@ public class Tcc2TspComparisonRunner {
     logger.info(String.format("Total time: %ss", totalTimer.endCounter()));
   }
 
-  private static void solveTsp(Graph graph, List<Integer> nodeIds, DijkstraQueue.Type queueType)
+  private static void solveTsp(
+      Graph graph,
+      List<Integer> nodeIds,
+      DijkstraQueue.Type queueType,
+      DijkstraCostMatrix.Engine engine,
+      int parallelism,
+      Landmarks landmarks,
+      ContractionHierarchy hierarchy)
       throws DijkstraOutOfMemoryError {
     Timer timer = new Timer();
     timer.startCounter();
-    double[][] costMatrix = DijkstraCostMatrix.buildCostMatrix(graph, nodeIds, true, queueType);
+    double[][] costMatrix = DijkstraCostMatrix.buildCostMatrix(
+        graph, nodeIds, true, queueType, engine, parallelism, landmarks, hierarchy);
     TspSolver.TspResult tspResult = TspSolver.solveTspProblem(costMatrix, 0);
     logger.info(String.format("Solved in: %ss Length: %s Path: %s Input: %s",
         timer.endCounter(),